@@ -18,10 +18,13 @@ CREATE TABLE IF NOT EXISTS clientes (
                                         id INTEGER PRIMARY KEY,
                                         nome VARCHAR(100) NOT NULL,
                                         limite INTEGER NOT NULL,
-                                        saldo INTEGER NOT NULL DEFAULT 0
+                                        saldo INTEGER NOT NULL DEFAULT 0,
+                                        versao INTEGER NOT NULL DEFAULT 0
 ) WITH (fillfactor=70);
 
--- Cria tabela de transações com particionamento por cliente
+-- Cria tabela de transações particionada por dia (UTC) de realizada_em
+-- A aplicação (PartitionManager) cria as partições dos próximos dias e aplica a retenção;
+-- sem partição DEFAULT, a consulta das últimas transações percorre as partições em ordem
 CREATE TABLE IF NOT EXISTS transacoes (
                                           id SERIAL,
                                           cliente_id INTEGER NOT NULL,
@@ -29,24 +32,45 @@ CREATE TABLE IF NOT EXISTS transacoes (
                                           tipo CHAR(1) NOT NULL,
                                           descricao VARCHAR(10) NOT NULL,
                                           realizada_em TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
-                                          PRIMARY KEY (id, cliente_id)
-) PARTITION BY HASH (cliente_id);
-
--- Cria partições para distribuir a carga
-CREATE TABLE transacoes_part_1 PARTITION OF transacoes
-    FOR VALUES WITH (modulus 5, remainder 0);
-CREATE TABLE transacoes_part_2 PARTITION OF transacoes
-    FOR VALUES WITH (modulus 5, remainder 1);
-CREATE TABLE transacoes_part_3 PARTITION OF transacoes
-    FOR VALUES WITH (modulus 5, remainder 2);
-CREATE TABLE transacoes_part_4 PARTITION OF transacoes
-    FOR VALUES WITH (modulus 5, remainder 3);
-CREATE TABLE transacoes_part_5 PARTITION OF transacoes
-    FOR VALUES WITH (modulus 5, remainder 4);
-
--- Cria índices de alta performance
+                                          PRIMARY KEY (id, realizada_em)
+) PARTITION BY RANGE (realizada_em);
+
+-- Cria as partições de hoje e dos próximos 2 dias, com o mesmo nome usado pela aplicação
+DO $$
+DECLARE
+    v_dia DATE;
+BEGIN
+    FOR i IN 0..2 LOOP
+        v_dia := (now() AT TIME ZONE 'UTC')::DATE + i;
+        EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF transacoes FOR VALUES FROM (%L) TO (%L)',
+                       'transacoes_p' || to_char(v_dia, 'YYYYMMDD'),
+                       v_dia || ' 00:00:00+00',
+                       (v_dia + 1) || ' 00:00:00+00');
+    END LOOP;
+END $$;
+
+-- Índice do histórico por cliente, usado apenas com HISTORICO_MODE=arquivo
+-- (um índice só em cliente_id seria redundante: é prefixo deste)
 CREATE INDEX IF NOT EXISTS idx_transacoes_cliente_data ON transacoes (cliente_id, realizada_em DESC);
-CREATE INDEX IF NOT EXISTS idx_transacoes_cliente ON transacoes (cliente_id);
+
+-- Últimas 10 transações de cada cliente em posições fixas (slot = seq mod 10)
+-- A linha do slot é sobrescrita no lugar; o fillfactor deixa espaço para atualizações HOT
+CREATE TABLE IF NOT EXISTS transacoes_recentes (
+                                                   cliente_id INTEGER NOT NULL,
+                                                   slot SMALLINT NOT NULL,
+                                                   seq BIGINT NOT NULL,
+                                                   valor INTEGER NOT NULL,
+                                                   tipo CHAR(1) NOT NULL,
+                                                   descricao VARCHAR(10) NOT NULL,
+                                                   realizada_em TIMESTAMP WITH TIME ZONE NOT NULL,
+                                                   PRIMARY KEY (cliente_id, slot)
+) WITH (fillfactor=50);
+
+-- Sequência de transações por cliente; fica fora de clientes para não disputar a linha do saldo
+CREATE TABLE IF NOT EXISTS transacoes_sequencia (
+                                                    cliente_id INTEGER PRIMARY KEY,
+                                                    seq BIGINT NOT NULL DEFAULT 0
+) WITH (fillfactor=50);
 
 -- Adiciona constraint de chave estrangeira
 ALTER TABLE transacoes ADD CONSTRAINT fk_cliente
@@ -74,6 +98,74 @@ VALUES
     (5, 'kid mais', 500000, 0)
 ON CONFLICT (id) DO NOTHING;
 
+INSERT INTO transacoes_sequencia (cliente_id)
+SELECT id FROM clientes
+ON CONFLICT (cliente_id) DO NOTHING;
+
+-- Mantém transacoes_recentes a partir de cada comando que insere em transacoes (INSERT, lote ou COPY)
+-- Um único UPDATE reserva as sequências de todos os clientes do comando e só as 10 últimas
+-- transações de cada cliente são gravadas nas posições
+CREATE OR REPLACE FUNCTION fn_manter_transacoes_recentes() RETURNS TRIGGER AS $$
+BEGIN
+    -- Trava as sequências sempre na mesma ordem para evitar deadlock entre lotes concorrentes
+    PERFORM 1 FROM transacoes_sequencia
+    WHERE cliente_id IN (SELECT DISTINCT cliente_id FROM novas)
+    ORDER BY cliente_id
+        FOR UPDATE;
+
+    WITH contagem AS (
+        SELECT cliente_id, count(*) AS qtd FROM novas GROUP BY cliente_id
+    ), reserva AS (
+        UPDATE transacoes_sequencia s
+        SET seq = s.seq + c.qtd
+        FROM contagem c
+        WHERE s.cliente_id = c.cliente_id
+        RETURNING s.cliente_id, s.seq AS ultima
+    ), numeradas AS (
+        SELECT n.cliente_id, n.valor, n.tipo, n.descricao, n.realizada_em, r.ultima,
+               r.ultima - count(*) OVER (PARTITION BY n.cliente_id)
+                   + row_number() OVER (PARTITION BY n.cliente_id ORDER BY n.realizada_em, n.id) AS seq
+        FROM novas n
+                 JOIN reserva r ON r.cliente_id = n.cliente_id
+    )
+    INSERT INTO transacoes_recentes (cliente_id, slot, seq, valor, tipo, descricao, realizada_em)
+    SELECT cliente_id, (seq % 10)::SMALLINT, seq, valor, tipo, descricao, realizada_em
+    FROM numeradas
+    WHERE seq > ultima - 10
+    ON CONFLICT (cliente_id, slot) DO UPDATE
+        SET seq = EXCLUDED.seq,
+            valor = EXCLUDED.valor,
+            tipo = EXCLUDED.tipo,
+            descricao = EXCLUDED.descricao,
+            realizada_em = EXCLUDED.realizada_em;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER tg_transacoes_recentes
+    AFTER INSERT ON transacoes
+    REFERENCING NEW TABLE AS novas
+    FOR EACH STATEMENT
+EXECUTE FUNCTION fn_manter_transacoes_recentes();
+
+-- Publica cada alteração de versão do cliente no canal clientes_saldo ("id:saldo:versao") para o
+-- CacheBus das instâncias da API; o NOTIFY só é entregue no commit. Usa a versão, não o saldo: um lote
+-- com soma zero muda a versão sem mudar o saldo, e os caches são marcados pela versão. Dispara apenas
+-- nas sessões em que a aplicação definiu rinha.cache_bus = 'on', então CACHE_BUS=off não paga o NOTIFY
+CREATE OR REPLACE FUNCTION fn_notificar_saldo() RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM pg_notify('clientes_saldo', NEW.id || ':' || NEW.saldo || ':' || NEW.versao);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER tg_clientes_saldo
+    AFTER UPDATE OF saldo, versao ON clientes
+    FOR EACH ROW
+    WHEN (NEW.versao IS DISTINCT FROM OLD.versao AND current_setting('rinha.cache_bus', true) = 'on')
+EXECUTE FUNCTION fn_notificar_saldo();
+
 -- Cria função para validar transações
 CREATE OR REPLACE FUNCTION fn_validar_transacao(
     p_cliente_id INTEGER,
@@ -109,7 +201,9 @@ CREATE OR REPLACE PROCEDURE pr_processar_transacao(
     p_descricao VARCHAR(10),
     INOUT p_novo_saldo INTEGER,
     INOUT p_limite INTEGER,
-    INOUT p_sucesso BOOLEAN
+    INOUT p_sucesso BOOLEAN,
+    p_realizada_em TIMESTAMP WITH TIME ZONE DEFAULT NULL,
+    INOUT p_versao INTEGER DEFAULT NULL
 ) AS $$
 DECLARE
     v_saldo_atual INTEGER;
@@ -137,18 +231,77 @@ BEGIN
 
     -- Atualiza saldo
     UPDATE clientes
-    SET saldo = p_novo_saldo
-    WHERE id = p_cliente_id;
+    SET saldo = p_novo_saldo,
+        versao = versao + 1
+    WHERE id = p_cliente_id
+    RETURNING versao INTO p_versao;
 
     -- Registra transação
-    INSERT INTO transacoes (cliente_id, valor, tipo, descricao)
-    VALUES (p_cliente_id, p_valor, p_tipo, p_descricao);
+    INSERT INTO transacoes (cliente_id, valor, tipo, descricao, realizada_em)
+    VALUES (p_cliente_id, p_valor, p_tipo, p_descricao, COALESCE(p_realizada_em, CURRENT_TIMESTAMP));
 
     -- Marca como sucesso
     p_sucesso := TRUE;
 END;
 $$ LANGUAGE plpgsql;
 
+-- Aplica em ordem um lote de transações de um cliente (WRITE_MODE=actor)
+-- Trava o cliente uma vez, valida cada transação sobre o saldo corrente do lote e grava saldo e
+-- histórico das aceitas em um UPDATE e um INSERT; devolve uma linha por transação, na ordem recebida
+CREATE OR REPLACE FUNCTION fn_processar_lote(
+    p_cliente_id INTEGER,
+    p_valores INTEGER[],
+    p_tipos TEXT[],
+    p_descricoes TEXT[],
+    p_realizadas_em TEXT[]
+) RETURNS TABLE (ordem INTEGER, novo_saldo INTEGER, limite_cliente INTEGER, sucesso BOOLEAN, nova_versao INTEGER) AS $$
+DECLARE
+    v_saldo INTEGER;
+    v_limite INTEGER;
+    v_versao INTEGER;
+    v_delta INTEGER;
+    v_aceitas INTEGER[] := '{}';
+BEGIN
+    SELECT c.saldo, c.limite, c.versao INTO v_saldo, v_limite, v_versao
+    FROM clientes c
+    WHERE c.id = p_cliente_id
+        FOR UPDATE;
+
+    IF NOT FOUND THEN
+        RETURN;
+    END IF;
+
+    FOR i IN 1 .. COALESCE(array_length(p_valores, 1), 0) LOOP
+        v_delta := CASE WHEN p_tipos[i] = 'c' THEN p_valores[i] ELSE -p_valores[i] END;
+        sucesso := v_saldo + v_delta >= -v_limite;
+        IF sucesso THEN
+            v_saldo := v_saldo + v_delta;
+            v_versao := v_versao + 1;
+            v_aceitas := v_aceitas || i;
+        END IF;
+        ordem := i;
+        novo_saldo := v_saldo;
+        limite_cliente := v_limite;
+        nova_versao := v_versao;
+        RETURN NEXT;
+    END LOOP;
+
+    IF cardinality(v_aceitas) > 0 THEN
+        -- versao avança uma vez por transação aceita, como nos demais modos
+        UPDATE clientes
+        SET saldo = v_saldo,
+            versao = v_versao
+        WHERE id = p_cliente_id;
+
+        INSERT INTO transacoes (cliente_id, valor, tipo, descricao, realizada_em)
+        SELECT p_cliente_id, p_valores[a.i], p_tipos[a.i], p_descricoes[a.i], p_realizadas_em[a.i]::timestamptz
+        FROM unnest(v_aceitas) WITH ORDINALITY AS a(i, n)
+        ORDER BY a.n;
+    END IF;
+END;
+$$ LANGUAGE plpgsql;
+
 -- Analisar tabelas para otimizar consultas
 ANALYZE clientes;
-ANALYZE transacoes;
\ No newline at end of file
+ANALYZE transacoes;
+ANALYZE transacoes_recentes;
\ No newline at end of file
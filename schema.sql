@@ -7,10 +7,12 @@ CREATE TABLE IF NOT EXISTS clientes (
                                         id INTEGER PRIMARY KEY,
                                         nome VARCHAR(100) NOT NULL,
                                         limite INTEGER NOT NULL,
-                                        saldo INTEGER NOT NULL DEFAULT 0
+                                        saldo INTEGER NOT NULL DEFAULT 0,
+                                        versao INTEGER NOT NULL DEFAULT 0
 );
 
--- Create transactions table with index for querying the latest transactions
+-- Create transactions table partitioned by day (UTC) of realizada_em
+-- The application (PartitionManager) creates upcoming partitions and applies retention
 CREATE TABLE IF NOT EXISTS transacoes (
                                           id SERIAL,
                                           cliente_id INTEGER NOT NULL,
@@ -18,15 +20,45 @@ CREATE TABLE IF NOT EXISTS transacoes (
                                           tipo CHAR(1) NOT NULL,
                                           descricao VARCHAR(10) NOT NULL,
                                           realizada_em TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
-                                          PRIMARY KEY (id),
+                                          PRIMARY KEY (id, realizada_em),
                                           CONSTRAINT fk_cliente FOREIGN KEY (cliente_id) REFERENCES clientes(id)
-);
+) PARTITION BY RANGE (realizada_em);
+
+-- Create today's partition and the next 2 days, named the same way as the application does
+DO $$
+DECLARE
+    v_day DATE;
+BEGIN
+    FOR i IN 0..2 LOOP
+        v_day := (now() AT TIME ZONE 'UTC')::DATE + i;
+        EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF transacoes FOR VALUES FROM (%L) TO (%L)',
+                       'transacoes_p' || to_char(v_day, 'YYYYMMDD'),
+                       v_day || ' 00:00:00+00',
+                       (v_day + 1) || ' 00:00:00+00');
+    END LOOP;
+END $$;
 
--- Create index for faster transaction retrieval
+-- Create index for faster transaction retrieval (created on every partition)
 CREATE INDEX IF NOT EXISTS idx_transacoes_cliente_data ON transacoes (cliente_id, realizada_em DESC);
 
--- Create specialized index for the transaction operations for faster transaction lookups
-CREATE INDEX IF NOT EXISTS idx_transacoes_cliente ON transacoes (cliente_id);
+-- Last 10 transactions of each client in fixed positions (slot = seq mod 10), read by HISTORICO_MODE=slots
+-- The slot row is overwritten in place; the fillfactor leaves room for HOT updates
+CREATE TABLE IF NOT EXISTS transacoes_recentes (
+                                                   cliente_id INTEGER NOT NULL,
+                                                   slot SMALLINT NOT NULL,
+                                                   seq BIGINT NOT NULL,
+                                                   valor INTEGER NOT NULL,
+                                                   tipo CHAR(1) NOT NULL,
+                                                   descricao VARCHAR(10) NOT NULL,
+                                                   realizada_em TIMESTAMP WITH TIME ZONE NOT NULL,
+                                                   PRIMARY KEY (cliente_id, slot)
+) WITH (fillfactor=50);
+
+-- Per-client transaction sequence, kept apart from clientes so it doesn't contend with the balance row
+CREATE TABLE IF NOT EXISTS transacoes_sequencia (
+                                                    cliente_id INTEGER PRIMARY KEY,
+                                                    seq BIGINT NOT NULL DEFAULT 0
+) WITH (fillfactor=50);
 
 -- Insert initial data for the 5 clients - using direct insert for better performance
 INSERT INTO clientes (id, nome, limite, saldo)
@@ -38,6 +70,131 @@ VALUES
     (5, 'kid mais', 500000, 0)
 ON CONFLICT (id) DO NOTHING;
 
+INSERT INTO transacoes_sequencia (cliente_id)
+SELECT id FROM clientes
+ON CONFLICT (cliente_id) DO NOTHING;
+
+-- Keep transacoes_recentes up to date from every statement that inserts into transacoes (INSERT, batch or COPY)
+-- A single UPDATE reserves the sequences of all clients in the statement and only the last 10
+-- transactions of each client are written to the slots
+CREATE OR REPLACE FUNCTION fn_manter_transacoes_recentes() RETURNS TRIGGER AS $$
+BEGIN
+    -- Lock the sequences always in the same order to avoid deadlocks between concurrent batches
+    PERFORM 1 FROM transacoes_sequencia
+    WHERE cliente_id IN (SELECT DISTINCT cliente_id FROM novas)
+    ORDER BY cliente_id
+        FOR UPDATE;
+
+    WITH contagem AS (
+        SELECT cliente_id, count(*) AS qtd FROM novas GROUP BY cliente_id
+    ), reserva AS (
+        UPDATE transacoes_sequencia s
+        SET seq = s.seq + c.qtd
+        FROM contagem c
+        WHERE s.cliente_id = c.cliente_id
+        RETURNING s.cliente_id, s.seq AS ultima
+    ), numeradas AS (
+        SELECT n.cliente_id, n.valor, n.tipo, n.descricao, n.realizada_em, r.ultima,
+               r.ultima - count(*) OVER (PARTITION BY n.cliente_id)
+                   + row_number() OVER (PARTITION BY n.cliente_id ORDER BY n.realizada_em, n.id) AS seq
+        FROM novas n
+                 JOIN reserva r ON r.cliente_id = n.cliente_id
+    )
+    INSERT INTO transacoes_recentes (cliente_id, slot, seq, valor, tipo, descricao, realizada_em)
+    SELECT cliente_id, (seq % 10)::SMALLINT, seq, valor, tipo, descricao, realizada_em
+    FROM numeradas
+    WHERE seq > ultima - 10
+    ON CONFLICT (cliente_id, slot) DO UPDATE
+        SET seq = EXCLUDED.seq,
+            valor = EXCLUDED.valor,
+            tipo = EXCLUDED.tipo,
+            descricao = EXCLUDED.descricao,
+            realizada_em = EXCLUDED.realizada_em;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE TRIGGER tg_transacoes_recentes
+    AFTER INSERT ON transacoes
+    REFERENCING NEW TABLE AS novas
+    FOR EACH STATEMENT
+EXECUTE FUNCTION fn_manter_transacoes_recentes();
+
+-- Publish every client version change on the clientes_saldo channel ("id:saldo:versao") for the
+-- CacheBus of the API instances; the NOTIFY is only delivered on commit. Keyed on versao, not saldo:
+-- a batch summing to zero changes the version but not the balance, and caches are tagged by version.
+-- Fires only in sessions where the application set rinha.cache_bus = 'on', so CACHE_BUS=off skips it
+CREATE OR REPLACE FUNCTION fn_notificar_saldo() RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM pg_notify('clientes_saldo', NEW.id || ':' || NEW.saldo || ':' || NEW.versao);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE TRIGGER tg_clientes_saldo
+    AFTER UPDATE OF saldo, versao ON clientes
+    FOR EACH ROW
+    WHEN (NEW.versao IS DISTINCT FROM OLD.versao AND current_setting('rinha.cache_bus', true) = 'on')
+EXECUTE FUNCTION fn_notificar_saldo();
+
+-- Apply a batch of one client's transactions in order (WRITE_MODE=actor)
+-- Locks the client once, checks each transaction against the batch's running balance and writes the
+-- balance and history of the accepted ones in one UPDATE and one INSERT; returns one row per transaction, in order
+CREATE OR REPLACE FUNCTION fn_processar_lote(
+    p_cliente_id INTEGER,
+    p_valores INTEGER[],
+    p_tipos TEXT[],
+    p_descricoes TEXT[],
+    p_realizadas_em TEXT[]
+) RETURNS TABLE (ordem INTEGER, novo_saldo INTEGER, limite_cliente INTEGER, sucesso BOOLEAN, nova_versao INTEGER) AS $$
+DECLARE
+    v_saldo INTEGER;
+    v_limite INTEGER;
+    v_versao INTEGER;
+    v_delta INTEGER;
+    v_aceitas INTEGER[] := '{}';
+BEGIN
+    SELECT c.saldo, c.limite, c.versao INTO v_saldo, v_limite, v_versao
+    FROM clientes c
+    WHERE c.id = p_cliente_id
+        FOR UPDATE;
+
+    IF NOT FOUND THEN
+        RETURN;
+    END IF;
+
+    FOR i IN 1 .. COALESCE(array_length(p_valores, 1), 0) LOOP
+        v_delta := CASE WHEN p_tipos[i] = 'c' THEN p_valores[i] ELSE -p_valores[i] END;
+        sucesso := v_saldo + v_delta >= -v_limite;
+        IF sucesso THEN
+            v_saldo := v_saldo + v_delta;
+            v_versao := v_versao + 1;
+            v_aceitas := v_aceitas || i;
+        END IF;
+        ordem := i;
+        novo_saldo := v_saldo;
+        limite_cliente := v_limite;
+        nova_versao := v_versao;
+        RETURN NEXT;
+    END LOOP;
+
+    IF cardinality(v_aceitas) > 0 THEN
+        -- versao advances once per accepted transaction, as in the other modes
+        UPDATE clientes
+        SET saldo = v_saldo,
+            versao = v_versao
+        WHERE id = p_cliente_id;
+
+        INSERT INTO transacoes (cliente_id, valor, tipo, descricao, realizada_em)
+        SELECT p_cliente_id, p_valores[a.i], p_tipos[a.i], p_descricoes[a.i], p_realizadas_em[a.i]::timestamptz
+        FROM unnest(v_aceitas) WITH ORDINALITY AS a(i, n)
+        ORDER BY a.n;
+    END IF;
+END;
+$$ LANGUAGE plpgsql;
+
 -- Optimize tables for better performance
 ANALYZE clientes;
-ANALYZE transacoes;
\ No newline at end of file
+ANALYZE transacoes;
+ANALYZE transacoes_recentes;
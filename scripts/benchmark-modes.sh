@@ -0,0 +1,67 @@
+#!/bin/bash
+
+# Script para comparar os modos de gravação (WRITE_MODE) com o mesmo teste de carga
+# Uso: ./scripts/benchmark-modes.sh [modos...]   (padrão: async procedure cte actor group)
+
+# Entrar no diretório raiz do projeto (ajuste se necessário)
+cd $(dirname $0)/..
+
+MODES=${@:-"async procedure cte actor group"}
+RESULTS_DIR=build/benchmark
+mkdir -p $RESULTS_DIR
+
+if ! command -v k6 &> /dev/null; then
+    echo "k6 não está instalado. Execute ./scripts/run-tests.sh uma vez para instalá-lo."
+    exit 1
+fi
+
+for MODE in $MODES; do
+    echo "======================================================="
+    echo "Modo de gravação: $MODE"
+    echo "======================================================="
+
+    # Banco recriado a cada rodada para que todos os modos partam do mesmo estado
+    docker-compose down -v > /dev/null 2>&1
+    WRITE_MODE=$MODE docker-compose up -d
+
+    echo "Aguardando inicialização da API..."
+    for i in $(seq 1 60); do
+        if [ "$(curl -s -o /dev/null -w "%{http_code}" http://localhost:9999/clientes/1/extrato)" == "200" ]; then
+            break
+        fi
+        sleep 1
+    done
+
+    k6 run --quiet --summary-export $RESULTS_DIR/$MODE.json k6/script.js
+
+    # Confere que saldo e histórico continuam consistentes após a carga
+    echo "Transações gravadas:"
+    docker-compose exec -T db psql -U postgres -d rinha -c \
+        "SELECT c.id, c.saldo, COALESCE(SUM(CASE WHEN t.tipo = 'c' THEN t.valor ELSE -t.valor END), 0) AS saldo_historico
+         FROM clientes c LEFT JOIN transacoes t ON t.cliente_id = c.id GROUP BY c.id, c.saldo ORDER BY c.id"
+done
+
+docker-compose down -v > /dev/null 2>&1
+
+SUMMARY=$RESULTS_DIR/resumo.txt
+
+{
+echo "======================================================="
+echo "Resumo (http_req_duration em ms e requisições/s)"
+echo "======================================================="
+printf "%-12s %10s %10s %10s %12s\n" "modo" "média" "p(90)" "p(95)" "req/s"
+for MODE in $MODES; do
+    FILE=$RESULTS_DIR/$MODE.json
+    if [ -f "$FILE" ]; then
+        if command -v jq &> /dev/null; then
+            printf "%-12s %10.2f %10.2f %10.2f %12.1f\n" "$MODE" \
+                "$(jq '.metrics.http_req_duration.avg' $FILE)" \
+                "$(jq '.metrics.http_req_duration["p(90)"]' $FILE)" \
+                "$(jq '.metrics.http_req_duration["p(95)"]' $FILE)" \
+                "$(jq '.metrics.http_reqs.rate' $FILE)"
+        else
+            echo "$MODE: $FILE (instale o jq para ver o resumo)"
+        fi
+    fi
+done
+} | tee $SUMMARY
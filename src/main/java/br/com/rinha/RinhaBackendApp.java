@@ -1,110 +1,153 @@
 package br.com.rinha;
 
-import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpServer;
-
+import br.com.rinha.config.AppConfig;
 import br.com.rinha.config.DatabaseConfig;
+import br.com.rinha.config.SwaggerConfig;
 import br.com.rinha.handler.ExtratoHandler;
 import br.com.rinha.handler.TransacaoHandler;
+import br.com.rinha.http.AdaptiveLimiter;
+import br.com.rinha.http.HttpContext;
+import br.com.rinha.http.HttpEngine;
+import br.com.rinha.http.JdkHttpEngine;
+import br.com.rinha.http.NioHttpEngine;
+import br.com.rinha.http.Route;
+import br.com.rinha.http.Router;
+import br.com.rinha.metrics.Metrics;
+import br.com.rinha.repository.CacheBus;
+import br.com.rinha.repository.PartitionManager;
+import br.com.rinha.util.Deadline;
 import br.com.rinha.util.WarmupUtil;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.Executors;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Classe principal da aplicação Rinha de Backend
  */
 public class RinhaBackendApp {
-    private static final Pattern TRANSACTION_PATH_PATTERN = Pattern.compile("/clientes/(\\d+)/transacoes");
-    private static final Pattern EXTRACT_PATH_PATTERN = Pattern.compile("/clientes/(\\d+)/extrato");
-    private static final int PORT = 9999;
+    private static final Router router = createRouter();
 
     private static final TransacaoHandler transacaoHandler = new TransacaoHandler();
     private static final ExtratoHandler extratoHandler = new ExtratoHandler();
 
+    // Limite de requisições simultâneas de transações e extratos, ajustado pela latência do banco
+    private static final AdaptiveLimiter limiter = new AdaptiveLimiter(AppConfig.admissionControl(),
+            AppConfig.admissionInitialLimit(), AppConfig.admissionMinLimit(), AppConfig.admissionMaxLimit());
+
+    // Prazo de cada transação ou extrato a partir do despacho
+    private static final long REQUEST_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(AppConfig.requestTimeoutMs());
+
+    // Resposta pronta para a recusa por sobrecarga (sem montar texto no caminho de rejeição)
+    private static final byte[] OVERLOADED_BODY =
+            "Serviço temporariamente indisponível, tente novamente".getBytes(StandardCharsets.UTF_8);
+
     /**
      * Método principal de inicialização da aplicação
      * @param args Argumentos de linha de comando (não utilizados)
      * @throws Exception em caso de erro
      */
     public static void main(String[] args) throws Exception {
-        // Inicializar o pool de conexões
+        // Inicializar o pool de conexões e alimentar o limite de requisições com a latência do banco
         DatabaseConfig.initConnectionPool();
+        DatabaseConfig.setLatencyListener(limiter::onSample);
+
+        // Garantir as partições de transacoes dos próximos dias antes de aceitar gravações
+        PartitionManager.getInstance().start();
+
+        // Escutar as alterações de saldo das outras instâncias (coerência dos caches)
+        CacheBus.getInstance().start();
 
         // Realizar warmup da infraestrutura
         System.out.println("Iniciando fase de warmup...");
         WarmupUtil.performWarmup();
 
-        // Criar servidor HTTP com um backlog maior para alta concorrência
-        HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 10000);
-
-        // Configurar rotas
-        server.createContext("/", RinhaBackendApp::handleRequest);
-
-        // Adicionar endpoint de health check para facilitar monitoramento
-        server.createContext("/health", RinhaBackendApp::handleHealthCheck);
-
-        // Usar virtual threads para processamento de requisições
-        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        // Selecionar a engine HTTP (NIO por padrão, servidor do JDK como fallback)
+        AppConfig.HttpEngineType engineType = AppConfig.httpEngine();
+        HttpEngine engine = engineType == AppConfig.HttpEngineType.JDK ? new JdkHttpEngine() : new NioHttpEngine();
 
         // Configurar hook de encerramento para limpar recursos
-        setupShutdownHook();
+        setupShutdownHook(engine);
 
-        // Iniciar o servidor
-        server.start();
-        System.out.println("Servidor iniciado na porta " + PORT + " usando virtual threads");
+        // Iniciar o servidor; todas as rotas passam por handleRequest
+        int port = AppConfig.serverPort();
+        engine.start(port, RinhaBackendApp::handleRequest);
+        System.out.println("Servidor iniciado na porta " + port + " usando engine " + engineType + " e virtual threads");
     }
 
     /**
      * Trata todas as requisições HTTP
-     * @param exchange Objeto de troca HTTP
+     * @param context Contexto da requisição HTTP
      * @throws IOException em caso de erro de I/O
      */
-    private static void handleRequest(HttpExchange exchange) throws IOException {
-        String path = exchange.getRequestURI().getPath();
-        String method = exchange.getRequestMethod();
-
+    private static void handleRequest(HttpContext context) throws IOException {
         try {
-            // Tratar transações
-            Matcher transactionMatcher = TRANSACTION_PATH_PATTERN.matcher(path);
-            if (method.equals("POST") && transactionMatcher.matches()) {
-                int clientId = Integer.parseInt(transactionMatcher.group(1));
-                transacaoHandler.handle(exchange, clientId);
-                return;
-            }
-
-            // Tratar extratos
-            Matcher extractMatcher = EXTRACT_PATH_PATTERN.matcher(path);
-            if (method.equals("GET") && extractMatcher.matches()) {
-                int clientId = Integer.parseInt(extractMatcher.group(1));
-                extratoHandler.handle(exchange, clientId);
-                return;
+            long match = context.route(router);
+            switch (Router.route(match)) {
+                case TRANSACOES, EXTRATO -> handleLimited(context, match);
+                case HEALTH -> handleHealthCheck(context);
+                case METRICS -> handleMetrics(context);
+                case SWAGGER_UI -> SwaggerConfig.handleSwaggerUi(context);
+                case API_DOCS -> SwaggerConfig.handleApiDocs(context);
+                default -> sendResponse(context, 404, "Rota não encontrada");
             }
-
-            // Tratar 404 Not Found
-            sendResponse(exchange, 404, "Rota não encontrada");
-        } catch (NumberFormatException e) {
-            // ID de cliente inválido
-            sendResponse(exchange, 404, "ID de cliente inválido");
         } catch (Exception e) {
             e.printStackTrace();
-            sendResponse(exchange, 500, "Erro interno do servidor: " + e.getMessage());
+            sendResponse(context, 500, "Erro interno do servidor: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Trata transações e extratos dentro do limite de requisições simultâneas e com prazo
+     * Acima do limite responde 503 na hora, em vez de esperar por uma conexão do pool
+     * @param context Contexto da requisição HTTP
+     * @param match rota e id resolvidos pelo Router
+     * @throws IOException em caso de erro de I/O
+     */
+    private static void handleLimited(HttpContext context, long match) throws IOException {
+        if (!limiter.tryAcquire()) {
+            context.setHeader("Retry-After", "1");
+            context.send(503, "text/plain", OVERLOADED_BODY);
+            return;
+        }
+        try {
+            Deadline.run(REQUEST_BUDGET_NANOS, () -> {
+                if (Router.route(match) == Route.TRANSACOES) {
+                    transacaoHandler.handle(context, Router.clientId(match));
+                } else {
+                    extratoHandler.handle(context, Router.clientId(match));
+                }
+            });
         } finally {
-            exchange.close();
+            limiter.release();
         }
     }
 
+    /**
+     * Cria a tabela de rotas da aplicação
+     * @return tabela de rotas
+     */
+    private static Router createRouter() {
+        Router router = new Router();
+        router.register(Route.TRANSACOES, "POST", "/clientes/{id}/transacoes");
+        router.register(Route.EXTRATO, "GET", "/clientes/{id}/extrato");
+
+        // Endpoint de health check para facilitar monitoramento
+        router.register(Route.HEALTH, null, "/health");
+
+        // Latências do pool e dos comandos SQL, profundidade da fila assíncrona
+        router.register(Route.METRICS, "GET", "/metrics");
+
+        SwaggerConfig.registerSwaggerEndpoints(router);
+        return router;
+    }
+
     /**
      * Endpoint de health check para monitoramento
-     * @param exchange Objeto de troca HTTP
+     * @param context Contexto da requisição HTTP
      * @throws IOException em caso de erro de I/O
      */
-    private static void handleHealthCheck(HttpExchange exchange) throws IOException {
+    private static void handleHealthCheck(HttpContext context) throws IOException {
         try {
             // Verificar se o banco de dados está acessível
             boolean dbHealthy = false;
@@ -120,37 +163,44 @@ public class RinhaBackendApp {
             }
 
             if (dbHealthy) {
-                sendResponse(exchange, 200, "OK");
+                sendResponse(context, 200, "OK");
             } else {
-                sendResponse(exchange, 503, "Database connection failed");
+                sendResponse(context, 503, "Database connection failed");
             }
         } catch (Exception e) {
-            sendResponse(exchange, 500, "Health check failed: " + e.getMessage());
+            sendResponse(context, 500, "Health check failed: " + e.getMessage());
         }
     }
 
+    /**
+     * Endpoint com o retrato atual das métricas (formato texto do Prometheus)
+     * @param context Contexto da requisição HTTP
+     * @throws IOException em caso de erro de I/O
+     */
+    private static void handleMetrics(HttpContext context) throws IOException {
+        context.setHeader("Cache-Control", "no-store");
+        context.send(200, "text/plain; version=0.0.4", Metrics.render().getBytes(StandardCharsets.UTF_8));
+    }
+
     /**
      * Método auxiliar para enviar respostas HTTP
-     * @param exchange Objeto de troca HTTP
+     * @param context Contexto da requisição HTTP
      * @param statusCode Código de status HTTP
      * @param message Mensagem de resposta
      * @throws IOException em caso de erro de I/O
      */
-    private static void sendResponse(HttpExchange exchange, int statusCode, String message) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "text/plain");
-        byte[] responseBytes = message.getBytes(StandardCharsets.UTF_8);
-        exchange.sendResponseHeaders(statusCode, responseBytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(responseBytes);
-        }
+    private static void sendResponse(HttpContext context, int statusCode, String message) throws IOException {
+        context.send(statusCode, "text/plain", message.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
      * Configura um hook de encerramento para limpar recursos quando a aplicação for terminada
+     * @param engine Engine HTTP em execução
      */
-    private static void setupShutdownHook() {
+    private static void setupShutdownHook(HttpEngine engine) {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("Encerrando servidor e pool de conexões...");
+            engine.stop();
             DatabaseConfig.closeConnectionPool();
         }));
     }
@@ -0,0 +1,81 @@
+package br.com.rinha.cache;
+
+/**
+ * Count-Min Sketch com contadores de 4 bits para estimar a frequência de acesso das chaves
+ * Cada long guarda 16 contadores; cada chave ocupa um contador em 4 posições independentes
+ * e a estimativa é o menor deles. Depois de 10 acessos por entrada da cache, todos os contadores
+ * são divididos por 2, para que a popularidade antiga envelheça.
+ *
+ * Não é thread-safe: acessado sob o lock de WTinyLfuCache.
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+    };
+
+    // Zera o bit que "desce" de um contador vizinho quando o long é deslocado para dividir por 2
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param maximumSize tamanho máximo da cache que usa o sketch
+     */
+    FrequencySketch(int maximumSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, maximumSize) - 1) << 1;
+        this.table = new long[capacity];
+        this.tableMask = capacity - 1;
+        this.sampleSize = 10 * Math.max(16, maximumSize);
+    }
+
+    /**
+     * Frequência estimada da chave (0 a 15)
+     * @param hash hash da chave
+     * @return menor contador entre as 4 posições
+     */
+    int frequency(int hash) {
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = mix(hash, i);
+            int index = (int) (h >>> 32) & tableMask;
+            int shift = (int) (h & 15) << 2;
+            frequency = Math.min(frequency, (int) ((table[index] >>> shift) & 15));
+        }
+        return frequency;
+    }
+
+    /**
+     * Registra um acesso à chave
+     * @param hash hash da chave
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = mix(hash, i);
+            int index = (int) (h >>> 32) & tableMask;
+            int shift = (int) (h & 15) << 2;
+            if (((table[index] >>> shift) & 15) < 15) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private static long mix(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[(row + 1) & 3];
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,105 @@
+package br.com.rinha.cache;
+
+import br.com.rinha.metrics.Metrics;
+import br.com.rinha.util.Deadline;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Agrupa cargas concorrentes da mesma chave em uma única execução (single-flight)
+ * A primeira requisição de uma chave executa a carga; as que chegam enquanto ela está em andamento
+ * esperam e recebem o mesmo resultado (ou a mesma exceção), sem ocupar outra conexão do pool.
+ * Terminada a carga, a chave sai do mapa e a próxima requisição carrega de novo.
+ *
+ * Quem entra em uma carga já iniciada pode receber um resultado lido um pouco antes da sua chegada,
+ * o mesmo que aconteceria se tivesse chegado alguns milissegundos antes.
+ *
+ * @param <K> tipo da chave
+ * @param <V> tipo do resultado
+ */
+public final class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    // Execuções feitas e requisições atendidas pela carga de outra
+    private final LongAdder loads;
+    private final LongAdder shared;
+
+    /**
+     * Carga de um valor a partir do banco
+     * @param <V> tipo do resultado
+     */
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load() throws SQLException;
+    }
+
+    /**
+     * @param name nome do agrupamento nas métricas (rótulo flight)
+     */
+    public SingleFlight(String name) {
+        String label = "{flight=\"" + name + "\"}";
+        this.loads = Metrics.counter("single_flight_loads" + label);
+        this.shared = Metrics.counter("single_flight_shared" + label);
+    }
+
+    /**
+     * Executa a carga da chave, ou aguarda a que já está em andamento
+     * @param key chave
+     * @param loader carga executada se nenhuma outra estiver em andamento para a chave
+     * @return resultado da carga (pode ser null)
+     * @throws SQLException erro da carga, repassado a todos que a aguardavam (SQLTimeoutException se o
+     * prazo da requisição acabar antes da carga em andamento)
+     */
+    public V execute(K key, Loader<V> loader) throws SQLException {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            shared.increment();
+            return await(existing);
+        }
+
+        loads.increment();
+        try {
+            V value = loader.load();
+            created.complete(value);
+            return value;
+        } catch (Throwable t) {
+            // Qualquer falha precisa liberar quem está aguardando
+            created.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    private V await(CompletableFuture<V> future) throws SQLException {
+        try {
+            // Quem aguarda a carga de outra requisição espera no máximo até o seu próprio prazo
+            long remaining = Deadline.remainingNanos();
+            return remaining == Long.MAX_VALUE ? future.get() : future.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw Deadline.expired("aguardar carga em andamento");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrompido aguardando carga em andamento", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new SQLException("Falha na carga em andamento", cause);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package br.com.rinha.cache;
+
+import br.com.rinha.metrics.Metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache de tamanho limitado com política W-TinyLFU
+ * Entradas novas passam por uma janela LRU pequena (1%); ao sair dela disputam a entrada na área
+ * principal (SLRU: 20% em período de experiência, 80% protegida) contra a vítima da área de
+ * experiência, e fica a de maior frequência estimada pelo FrequencySketch. Assim uma rajada de
+ * chaves aleatórias (ex.: IDs inexistentes) não expulsa as entradas realmente usadas.
+ *
+ * Leituras não bloqueiam: a consulta é no ConcurrentHashMap e a atualização da ordem de acesso
+ * só acontece se o lock estiver livre (um acesso descartado apenas deixa a política menos precisa).
+ * Escritas e remoções são serializadas pelo lock.
+ *
+ * @param <K> tipo da chave
+ * @param <V> tipo do valor
+ */
+public final class WTinyLfuCache<K, V> {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int REMOVED = 3;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FrequencySketch sketch;
+
+    private final AccessOrder<K, V> window = new AccessOrder<>();
+    private final AccessOrder<K, V> probation = new AccessOrder<>();
+    private final AccessOrder<K, V> protectedQueue = new AccessOrder<>();
+
+    private final int maximumSize;
+    private final int windowMaximum;
+    private final int protectedMaximum;
+    private final long expireAfterWriteNanos;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    /**
+     * Entrada da cache, encadeada na fila de acesso da sua área
+     */
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        volatile long writtenAt;
+        int queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, long writtenAt) {
+            this.key = key;
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+    }
+
+    /**
+     * Lista duplamente encadeada em ordem de acesso (primeiro = menos recente)
+     */
+    private static final class AccessOrder<K, V> {
+        Node<K, V> first;
+        Node<K, V> last;
+        int size;
+
+        void addLast(Node<K, V> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+            size++;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToEnd(Node<K, V> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            first = null;
+            last = null;
+            size = 0;
+        }
+    }
+
+    /**
+     * @param name nome da cache nas métricas (rótulo cache)
+     * @param maximumSize quantidade máxima de entradas
+     * @param expireAfterWriteMs validade de cada entrada após gravada, ou 0 para não expirar por tempo
+     */
+    public WTinyLfuCache(String name, int maximumSize, long expireAfterWriteMs) {
+        this.maximumSize = Math.max(2, maximumSize);
+        this.windowMaximum = Math.max(1, this.maximumSize / 100);
+        this.protectedMaximum = (int) ((this.maximumSize - windowMaximum) * 0.8);
+        this.expireAfterWriteNanos = expireAfterWriteMs * 1_000_000L;
+        this.sketch = new FrequencySketch(this.maximumSize);
+
+        String label = "{cache=\"" + name + "\"}";
+        this.hits = Metrics.counter("cache_hits" + label);
+        this.misses = Metrics.counter("cache_misses" + label);
+        this.evictions = Metrics.counter("cache_evictions" + label);
+        Metrics.gauge("cache_size" + label, data::size);
+    }
+
+    /**
+     * Obtém o valor da chave
+     * @param key chave
+     * @return valor, ou null se ausente ou expirado
+     */
+    public V get(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (isExpired(node, System.nanoTime())) {
+            lock.lock();
+            try {
+                // Remove só esta entrada; outra thread pode ter gravado um valor novo para a chave
+                if (data.remove(key, node)) {
+                    unlink(node);
+                }
+            } finally {
+                lock.unlock();
+            }
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+
+        if (lock.tryLock()) {
+            try {
+                onAccess(node);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return node.value;
+    }
+
+    /**
+     * Verifica se a chave está na cache (conta como acesso)
+     * @param key chave
+     * @return true se presente e não expirada
+     */
+    public boolean contains(K key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Grava o valor da chave, expulsando entradas se a cache passar do tamanho máximo
+     * @param key chave
+     * @param value valor (não nulo)
+     */
+    public void put(K key, V value) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            Node<K, V> existing = data.get(key);
+            if (existing != null) {
+                existing.value = value;
+                existing.writtenAt = now;
+                onAccess(existing);
+                return;
+            }
+
+            Node<K, V> node = new Node<>(key, value, now);
+            node.queue = WINDOW;
+            data.put(key, node);
+            window.addLast(node);
+            sketch.increment(hash(key));
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove a chave
+     * @param key chave
+     */
+    public void remove(K key) {
+        lock.lock();
+        try {
+            Node<K, V> node = data.remove(key);
+            if (node != null) {
+                unlink(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove todas as entradas (a frequência estimada das chaves é mantida)
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Quantidade atual de entradas
+     * @return tamanho
+     */
+    public int size() {
+        return data.size();
+    }
+
+    private boolean isExpired(Node<K, V> node, long now) {
+        return expireAfterWriteNanos > 0 && now - node.writtenAt > expireAfterWriteNanos;
+    }
+
+    /**
+     * Registra o acesso e promove a entrada (lock adquirido)
+     */
+    private void onAccess(Node<K, V> node) {
+        if (node.queue == REMOVED) {
+            return;
+        }
+        sketch.increment(hash(node.key));
+        switch (node.queue) {
+            case WINDOW -> window.moveToEnd(node);
+            case PROBATION -> {
+                // Segundo acesso na área principal: passa para a área protegida
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedQueue.addLast(node);
+                if (protectedQueue.size > protectedMaximum) {
+                    Node<K, V> demoted = protectedQueue.first;
+                    protectedQueue.remove(demoted);
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                }
+            }
+            case PROTECTED -> protectedQueue.moveToEnd(node);
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Move o excedente da janela para a área principal e expulsa até caber no tamanho máximo (lock adquirido)
+     */
+    private void evict() {
+        while (window.size > windowMaximum) {
+            Node<K, V> candidate = window.first;
+            window.remove(candidate);
+            candidate.queue = PROBATION;
+            probation.addLast(candidate);
+        }
+
+        while (data.size() > maximumSize) {
+            Node<K, V> victim = probation.first;
+            Node<K, V> candidate = probation.last;
+            Node<K, V> evicted;
+            if (victim == null) {
+                evicted = protectedQueue.first != null ? protectedQueue.first : window.first;
+            } else if (victim == candidate) {
+                evicted = victim;
+            } else {
+                // O candidato recém-chegado só entra se for mais frequente que a vítima
+                evicted = sketch.frequency(hash(candidate.key)) > sketch.frequency(hash(victim.key))
+                        ? victim : candidate;
+            }
+            data.remove(evicted.key, evicted);
+            unlink(evicted);
+            evictions.increment();
+        }
+    }
+
+    private void unlink(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW -> window.remove(node);
+            case PROBATION -> probation.remove(node);
+            case PROTECTED -> protectedQueue.remove(node);
+            default -> {
+                return;
+            }
+        }
+        node.queue = REMOVED;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
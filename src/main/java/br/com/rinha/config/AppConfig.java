@@ -0,0 +1,402 @@
+package br.com.rinha.config;
+
+import java.util.Locale;
+
+/**
+ * Configurações da aplicação lidas de variáveis de ambiente
+ * Centraliza os modos selecionáveis na inicialização
+ */
+public class AppConfig {
+
+    /**
+     * Engines HTTP disponíveis
+     */
+    public enum HttpEngineType {
+        // Engine própria baseada em seletores NIO e buffers diretos
+        NIO,
+        // Servidor nativo do JDK (com.sun.net.httpserver), mantido como fallback
+        JDK
+    }
+
+    /**
+     * Origem das últimas transações exibidas no extrato
+     */
+    public enum ExtratoMode {
+        // Anel em memória mantido no caminho de escrita, carregado do banco no primeiro acesso
+        // Só vê as escritas da própria instância: uso com uma única instância atrás do balanceador
+        MEMORIA,
+        // Consulta ao banco a cada extrato, com cache de 5 segundos
+        BANCO,
+        // Uma única consulta que devolve o extrato pronto em JSON, com saldo e transações do mesmo snapshot
+        JSON
+    }
+
+    /**
+     * Tabela de onde as últimas transações de um cliente são lidas
+     */
+    public enum HistoricoMode {
+        // Tabela transacoes_recentes com 10 posições fixas por cliente (slot = seq mod 10), mantida por trigger
+        SLOTS,
+        // Histórico completo (transacoes), ordenado por realizada_em pelo índice do cliente
+        ARQUIVO
+    }
+
+    /**
+     * Destino das partições de transacoes que passaram do prazo de retenção
+     */
+    public enum PartitionRetention {
+        // Desanexa a partição, que continua no banco como tabela de arquivo
+        DETACH,
+        // Desanexa e apaga a partição
+        DROP
+    }
+
+    /**
+     * Estratégias de gravação de uma transação
+     */
+    public enum WriteMode {
+        // UPDATE do saldo e histórico gravado em lote por uma fila assíncrona
+        ASYNC,
+        // Procedure pr_processar_transacao: saldo e histórico em uma única chamada
+        PROCEDURE,
+        // UPDATE + INSERT em um único comando com CTE
+        CTE,
+        // Ator por cliente: uma caixa de mensagens com um consumidor aplica lotes via fn_processar_lote, sem lock
+        ACTOR,
+        // Group commit: quem obtém o lock do cliente aplica, em um comando, as transações que chegaram nesse meio tempo
+        GROUP
+    }
+
+    /**
+     * Controle de concorrência entre instâncias na atualização do saldo (atomicUpdate)
+     */
+    public enum ConcurrencyMode {
+        // UPDATE condicional; o lock de linha do PostgreSQL serializa as instâncias
+        ROW,
+        // pg_advisory_xact_lock por cliente antes do UPDATE
+        ADVISORY,
+        // Leitura sem lock e UPDATE com compare-and-set na coluna versao
+        OPTIMISTIC
+    }
+
+    /**
+     * Formas de gravar os lotes da fila assíncrona no banco
+     */
+    public enum IngestMode {
+        // Protocolo COPY do PostgreSQL (CopyManager), um único comando por lote
+        COPY,
+        // INSERT com addBatch/executeBatch (reWriteBatchedInserts)
+        BATCH
+    }
+
+    /**
+     * Porta em que o servidor HTTP escuta
+     * @return porta configurada em SERVER_PORT (padrão 9999)
+     */
+    public static int serverPort() {
+        return getEnvInt("SERVER_PORT", 9999);
+    }
+
+    /**
+     * Engine HTTP selecionada
+     * @return engine configurada em HTTP_ENGINE (padrão NIO)
+     */
+    public static HttpEngineType httpEngine() {
+        return getEnvEnum("HTTP_ENGINE", HttpEngineType.NIO);
+    }
+
+    /**
+     * Tempo máximo que uma conexão da engine NIO fica sem receber bytes antes de ser fechada
+     * Deve ser maior que o keepalive_timeout do upstream no nginx (60s): se a API fechar antes,
+     * o nginx reaproveita um socket já fechado e o POST falha com 502, sem nova tentativa
+     * @return milissegundos configurados em HTTP_IDLE_TIMEOUT_MS (padrão 75000; 0 desativa)
+     */
+    public static int httpIdleTimeoutMs() {
+        return Math.max(0, getEnvInt("HTTP_IDLE_TIMEOUT_MS", 75000));
+    }
+
+    /**
+     * Máximo de conexões abertas na engine NIO; as excedentes são fechadas ao serem aceitas
+     * @return limite configurado em HTTP_MAX_CONNECTIONS (padrão 4096)
+     */
+    public static int httpMaxConnections() {
+        return Math.max(1, getEnvInt("HTTP_MAX_CONNECTIONS", 4096));
+    }
+
+    /**
+     * Origem das transações do extrato
+     * @return modo configurado em EXTRATO_MODE (padrão BANCO)
+     */
+    public static ExtratoMode extratoMode() {
+        return getEnvEnum("EXTRATO_MODE", ExtratoMode.BANCO);
+    }
+
+    /**
+     * Tabela de leitura das últimas transações
+     * @return modo configurado em HISTORICO_MODE (padrão SLOTS)
+     */
+    public static HistoricoMode historicoMode() {
+        return getEnvEnum("HISTORICO_MODE", HistoricoMode.SLOTS);
+    }
+
+    /**
+     * Estratégia de gravação das transações
+     * @return modo configurado em WRITE_MODE (padrão ASYNC)
+     */
+    public static WriteMode writeMode() {
+        return getEnvEnum("WRITE_MODE", WriteMode.ASYNC);
+    }
+
+    /**
+     * Controle de concorrência da atualização do saldo
+     * @return modo configurado em CONCURRENCY_MODE (padrão ROW)
+     */
+    public static ConcurrencyMode concurrencyMode() {
+        return getEnvEnum("CONCURRENCY_MODE", ConcurrencyMode.ROW);
+    }
+
+    /**
+     * Forma de gravação dos lotes assíncronos
+     * @return modo configurado em INGEST_MODE (padrão COPY)
+     */
+    public static IngestMode ingestMode() {
+        return getEnvEnum("INGEST_MODE", IngestMode.COPY);
+    }
+
+    /**
+     * Tamanho mínimo de lote que dispara a gravação imediata da fila assíncrona
+     * @return quantidade configurada em FLUSH_BATCH_SIZE (padrão 50)
+     */
+    public static int flushBatchSize() {
+        return Math.max(1, getEnvInt("FLUSH_BATCH_SIZE", 50));
+    }
+
+    /**
+     * Tamanho máximo de um lote da fila assíncrona
+     * @return quantidade configurada em FLUSH_MAX_BATCH_SIZE (padrão 1000)
+     */
+    public static int flushMaxBatchSize() {
+        return Math.max(1, getEnvInt("FLUSH_MAX_BATCH_SIZE", 1000));
+    }
+
+    /**
+     * Tempo máximo que uma transação espera na fila antes de ser gravada
+     * @return milissegundos configurados em FLUSH_LINGER_MS (padrão 10)
+     */
+    public static int flushLingerMs() {
+        return Math.max(1, getEnvInt("FLUSH_LINGER_MS", 10));
+    }
+
+    /**
+     * Capacidade da fila assíncrona; acima disso saveAsync aguarda o banco
+     * @return quantidade configurada em QUEUE_CAPACITY (padrão 20000)
+     */
+    public static int queueCapacity() {
+        return Math.max(1, getEnvInt("QUEUE_CAPACITY", 20000));
+    }
+
+    /**
+     * Diretório do WAL das transações assíncronas
+     * @return diretório configurado em WAL_DIR (padrão /tmp/rinha-wal) ou null se WAL_DIR=off
+     */
+    public static String walDir() {
+        String dir = getEnv("WAL_DIR", "/tmp/rinha-wal");
+        return "off".equalsIgnoreCase(dir) ? null : dir;
+    }
+
+    /**
+     * Tamanho de cada segmento do WAL
+     * @return tamanho em bytes, configurado em WAL_SEGMENT_KB (padrão 4096 KB)
+     */
+    public static int walSegmentSize() {
+        return getEnvInt("WAL_SEGMENT_KB", 4096) * 1024;
+    }
+
+    /**
+     * Barramento LISTEN/NOTIFY que mantém os caches de saldo e extrato coerentes entre as instâncias
+     * @return false se CACHE_BUS=off (padrão on)
+     */
+    public static boolean cacheBus() {
+        return !"off".equalsIgnoreCase(getEnv("CACHE_BUS", "on"));
+    }
+
+    /**
+     * Quantidade de locks da tabela de locks por cliente
+     * @return quantidade configurada em LOCK_STRIPES (padrão 64), arredondada para potência de 2
+     */
+    public static int lockStripes() {
+        return Math.max(1, getEnvInt("LOCK_STRIPES", 64));
+    }
+
+    /**
+     * Tempo máximo de espera pelo lock de um cliente antes de responder 503
+     * @return milissegundos configurados em LOCK_TIMEOUT_MS (padrão 2000)
+     */
+    public static int lockTimeoutMs() {
+        return Math.max(1, getEnvInt("LOCK_TIMEOUT_MS", 2000));
+    }
+
+    /**
+     * Quantidade máxima de respostas de extrato em cache
+     * @return entradas configuradas em EXTRATO_CACHE_SIZE (padrão 1024)
+     */
+    public static int extratoCacheSize() {
+        return Math.max(2, getEnvInt("EXTRATO_CACHE_SIZE", 1024));
+    }
+
+    /**
+     * Faixa de IDs de cliente guardada em arrays densos na tabela de estado por cliente
+     * @return quantidade configurada em CLIENT_TABLE_DENSE_SIZE (padrão 1024; IDs de 0 a 1023)
+     */
+    public static int clientTableDenseSize() {
+        return Math.max(0, getEnvInt("CLIENT_TABLE_DENSE_SIZE", 1024));
+    }
+
+    /**
+     * Quantidade máxima de IDs inexistentes lembrados
+     * @return entradas configuradas em NEGATIVE_CACHE_SIZE (padrão 1024)
+     */
+    public static int negativeCacheSize() {
+        return Math.max(2, getEnvInt("NEGATIVE_CACHE_SIZE", 1024));
+    }
+
+    /**
+     * Validade de cada ID inexistente lembrado
+     * @return milissegundos configurados em NEGATIVE_CACHE_TTL_MS (padrão 30000)
+     */
+    public static int negativeCacheTtlMs() {
+        return Math.max(1, getEnvInt("NEGATIVE_CACHE_TTL_MS", 30000));
+    }
+
+    /**
+     * Máximo de transações de um cliente aplicadas por ida ao banco nos modos ator e group commit
+     * @return quantidade configurada em ACTOR_MAX_BATCH (padrão 64)
+     */
+    public static int actorMaxBatch() {
+        return Math.max(1, getEnvInt("ACTOR_MAX_BATCH", 64));
+    }
+
+    /**
+     * Prazo de cada requisição de transação ou extrato, a partir do despacho
+     * Limita a espera pelo lock do cliente e pelo pool, o timeout dos comandos SQL e as novas tentativas
+     * @return milissegundos configurados em REQUEST_TIMEOUT_MS (padrão 3000)
+     */
+    public static int requestTimeoutMs() {
+        return Math.max(1, getEnvInt("REQUEST_TIMEOUT_MS", 3000));
+    }
+
+    /**
+     * Limite adaptativo de requisições simultâneas com 503 imediato acima dele
+     * @return false se ADMISSION_CONTROL=off (padrão on)
+     */
+    public static boolean admissionControl() {
+        return !"off".equalsIgnoreCase(getEnv("ADMISSION_CONTROL", "on"));
+    }
+
+    /**
+     * Limite inicial de requisições simultâneas, antes de haver amostras de latência
+     * @return quantidade configurada em ADMISSION_INITIAL_LIMIT (padrão 40)
+     */
+    public static int admissionInitialLimit() {
+        return Math.max(1, getEnvInt("ADMISSION_INITIAL_LIMIT", 40));
+    }
+
+    /**
+     * Limite mínimo de requisições simultâneas
+     * @return quantidade configurada em ADMISSION_MIN_LIMIT (padrão 8)
+     */
+    public static int admissionMinLimit() {
+        return Math.max(1, getEnvInt("ADMISSION_MIN_LIMIT", 8));
+    }
+
+    /**
+     * Limite máximo de requisições simultâneas
+     * @return quantidade configurada em ADMISSION_MAX_LIMIT (padrão 400)
+     */
+    public static int admissionMaxLimit() {
+        return Math.max(1, getEnvInt("ADMISSION_MAX_LIMIT", 400));
+    }
+
+    /**
+     * Quantos dias de partições de transacoes são criados com antecedência
+     * @return dias configurados em PARTITION_DAYS_AHEAD (padrão 2)
+     */
+    public static int partitionDaysAhead() {
+        return Math.max(1, getEnvInt("PARTITION_DAYS_AHEAD", 2));
+    }
+
+    /**
+     * Dias de histórico mantidos anexados a transacoes
+     * Por padrão nada sai de transacoes: partições desanexadas somem do extrato lido da tabela
+     * (HISTORICO_MODE=arquivo) e de qualquer consulta de auditoria sobre transacoes
+     * @return dias configurados em PARTITION_RETENTION_DAYS (padrão 0, mantém tudo)
+     */
+    public static int partitionRetentionDays() {
+        return Math.max(0, getEnvInt("PARTITION_RETENTION_DAYS", 0));
+    }
+
+    /**
+     * O que fazer com as partições fora da retenção
+     * @return modo configurado em PARTITION_RETENTION (padrão DETACH)
+     */
+    public static PartitionRetention partitionRetention() {
+        return getEnvEnum("PARTITION_RETENTION", PartitionRetention.DETACH);
+    }
+
+    /**
+     * Intervalo entre as verificações das partições
+     * @return minutos configurados em PARTITION_CHECK_MINUTES (padrão 60)
+     */
+    public static int partitionCheckMinutes() {
+        return Math.max(1, getEnvInt("PARTITION_CHECK_MINUTES", 60));
+    }
+
+    /**
+     * Lê uma variável de ambiente com valor padrão
+     * @param name nome da variável
+     * @param defaultValue valor padrão
+     * @return valor da variável ou o padrão
+     */
+    static String getEnv(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    /**
+     * Lê uma variável de ambiente numérica com valor padrão
+     * @param name nome da variável
+     * @param defaultValue valor padrão
+     * @return valor da variável ou o padrão se ausente ou inválido
+     */
+    static int getEnvInt(String name, int defaultValue) {
+        String value = getEnv(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Valor inválido para " + name + ": " + value + ", usando " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Lê uma variável de ambiente que seleciona um modo (enum), sem diferenciar maiúsculas
+     * @param name nome da variável
+     * @param defaultValue modo padrão
+     * @return modo selecionado ou o padrão se ausente ou inválido
+     */
+    static <E extends Enum<E>> E getEnvEnum(String name, E defaultValue) {
+        String value = getEnv(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(defaultValue.getDeclaringClass(), value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Valor inválido para " + name + ": " + value + ", usando " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -1,12 +1,21 @@
 package br.com.rinha.config;
 
+import br.com.rinha.metrics.Metrics;
+import br.com.rinha.util.Deadline;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
 
 /**
  * Configuração do pool de conexões com o banco de dados
@@ -22,11 +31,21 @@ public class DatabaseConfig {
     // Timeout para obtenção de conexão (ms)
     private static final int CONNECTION_TIMEOUT = 10000;
 
+    // Timeout de leitura do socket (s); comandos sem timeout próprio nunca esperam mais que isso
+    public static final int SOCKET_TIMEOUT_SECONDS = 30;
+
     private static HikariDataSource dataSource;
 
+    // Uma permissão por conexão do pool: a espera acontece aqui, limitada pelo prazo da requisição,
+    // já que o Hikari só aceita um connectionTimeout global
+    private static final Semaphore borrowPermits = new Semaphore(MAX_POOL_SIZE);
+
     // Contador para monitorar conexões ativas
     private static final AtomicInteger activeConnections = new AtomicInteger(0);
 
+    // Recebe a latência de cada uso do banco (espera pelo pool + tempo com a conexão)
+    private static volatile LongConsumer latencyListener = latency -> { };
+
     /**
      * Inicializa o pool de conexões
      */
@@ -55,6 +74,7 @@ public class DatabaseConfig {
             // Connection pool settings optimized for high concurrency
             config.setMaximumPoolSize(MAX_POOL_SIZE);
             config.setMinimumIdle(MIN_IDLE);
+            // Timeout global, para tarefas de fundo; requisições esperam no máximo o próprio prazo (ver getConnection)
             config.setConnectionTimeout(CONNECTION_TIMEOUT);
             config.setIdleTimeout(300000); // 5 minutos
             config.setMaxLifetime(1800000); // 30 minutos
@@ -69,21 +89,23 @@ public class DatabaseConfig {
             config.setKeepaliveTime(60000); // 1 minuto
             config.setLeakDetectionThreshold(60000); // 1 minuto
 
-            // Cache de prepared statements
-            config.addDataSourceProperty("cachePrepStmts", "true");
-            config.addDataSourceProperty("prepStmtCacheSize", "500");
-            config.addDataSourceProperty("prepStmtCacheSqlLimit", "4096");
+            // Statements preparados no servidor já na primeira execução, com resultados em binário
+            // (os nomes cachePrepStmts/useServerPrepStmts são do driver MySQL e o pgjdbc os ignora)
+            config.addDataSourceProperty("prepareThreshold", "1");
+            config.addDataSourceProperty("preparedStatementCacheQueries", "256");
+            config.addDataSourceProperty("binaryTransfer", "true");
 
             // Otimizações PostgreSQL
-            config.addDataSourceProperty("useServerPrepStmts", "true");
-            config.addDataSourceProperty("useLocalSessionState", "true");
-            config.addDataSourceProperty("rewriteBatchedStatements", "true");
-            config.addDataSourceProperty("elideSetAutoCommits", "true");
-            config.addDataSourceProperty("maintainTimeStats", "false");
+            config.addDataSourceProperty("reWriteBatchedInserts", "true"); // INSERTs em lote viram um único INSERT multi-valores
 
             // Otimizações adicionais
             config.addDataSourceProperty("tcpKeepAlive", "true");
-            config.addDataSourceProperty("socketTimeout", "30"); // 30 segundos
+            config.addDataSourceProperty("socketTimeout", String.valueOf(SOCKET_TIMEOUT_SECONDS));
+
+            // Habilita o NOTIFY do trigger de saldo nas sessões da aplicação (ver CacheBus)
+            if (AppConfig.cacheBus()) {
+                config.setConnectionInitSql("SET rinha.cache_bus = 'on'");
+            }
 
             // Registro de métricas
             config.setMetricRegistry(null); // Remova esta linha se quiser usar métricas
@@ -93,6 +115,7 @@ public class DatabaseConfig {
             System.out.println("Inicializando pool de conexões com " + MAX_POOL_SIZE + " conexões...");
             dataSource = new HikariDataSource(config);
             System.out.println("Pool de conexões inicializado com sucesso!");
+            registerPoolGauges();
 
             // Testar a conexão
             try (Connection conn = dataSource.getConnection()) {
@@ -114,37 +137,130 @@ public class DatabaseConfig {
     }
 
     /**
-     * Obtém uma conexão do pool com monitoramento usando um Proxy dinâmico
+     * Obtém uma conexão do pool com monitoramento
+     * Mede o tempo de espera pelo pool e, ao devolver a conexão, o tempo em que ela ficou em uso.
+     * A espera por uma conexão livre é limitada pelo prazo da requisição; sem prazo (batcher,
+     * manutenção de partições, warmup) vale o timeout do pool.
      * @return conexão com o banco de dados
-     * @throws SQLException em caso de falha na obtenção da conexão
+     * @throws SQLException em caso de falha na obtenção da conexão (SQLTimeoutException se o prazo
+     * da requisição acabar antes)
      */
     public static Connection getConnection() throws SQLException {
         if (dataSource == null) {
             initConnectionPool();
         }
 
-        Connection conn = dataSource.getConnection();
-        int current = activeConnections.incrementAndGet();
+        // Sem prazo para a consulta, não adianta ocupar uma conexão
+        Deadline.check("obter conexão do pool");
+
+        long start = System.nanoTime();
+        acquirePermit(start);
+        Connection conn;
+        try {
+            conn = dataSource.getConnection();
+        } catch (SQLException | RuntimeException e) {
+            borrowPermits.release();
+            throw e;
+        }
+        long waitNanos = System.nanoTime() - start;
+        Metrics.POOL_WAIT.record(waitNanos);
+        if (Deadline.remainingNanos() <= 0) {
+            // O prazo acabou durante a espera: devolve a conexão sem usá-la (a espera ainda conta como latência)
+            try {
+                conn.close();
+            } finally {
+                borrowPermits.release();
+            }
+            latencyListener.accept(waitNanos);
+            throw Deadline.expired("obter conexão do pool");
+        }
+        activeConnections.incrementAndGet();
+
+        return new InstrumentedConnection(conn, holdNanos -> {
+            borrowPermits.release();
+            activeConnections.decrementAndGet();
+            Metrics.CONNECTION_HOLD.record(holdNanos);
+            latencyListener.accept(waitNanos + holdNanos);
+        });
+    }
+
+    /**
+     * Aguarda uma vaga no pool até o prazo da requisição ou, sem prazo, até o timeout do pool
+     * @param start início da espera (System.nanoTime())
+     * @throws SQLException se a vaga não surgiu a tempo (SQLTimeoutException quando foi o prazo que acabou)
+     */
+    private static void acquirePermit(long start) throws SQLException {
+        long remaining = Deadline.remainingNanos();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(CONNECTION_TIMEOUT);
+        try {
+            if (borrowPermits.tryAcquire(Math.min(remaining, timeout), TimeUnit.NANOSECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrompido aguardando conexão do pool", e);
+        }
+        long waitNanos = System.nanoTime() - start;
+        Metrics.POOL_WAIT.record(waitNanos);
+        if (remaining <= timeout) {
+            latencyListener.accept(waitNanos);
+            throw Deadline.expired("obter conexão do pool");
+        }
+        throw new SQLTransientConnectionException(
+                "Nenhuma conexão livre no pool após " + CONNECTION_TIMEOUT + "ms");
+    }
+
+    /**
+     * Registra quem recebe a latência de cada uso do banco (ex.: o limite adaptativo de requisições)
+     * @param listener consumidor da latência em nanossegundos
+     */
+    public static void setLatencyListener(LongConsumer listener) {
+        latencyListener = listener;
+    }
 
-        // Logs de alerta se estiver chegando perto do limite
-        if (current > MAX_POOL_SIZE * 0.8) {
-            System.out.println("ALERTA: Uso elevado do pool de conexões: " + current + "/" + MAX_POOL_SIZE);
+    /**
+     * Abre uma conexão fora do pool, para uso prolongado (ex.: LISTEN), com autocommit ligado
+     * Não conta no tamanho do pool nem dispara a detecção de vazamento do Hikari
+     * @return conexão dedicada; o chamador deve fechá-la
+     * @throws SQLException em caso de falha na conexão
+     */
+    public static Connection createDedicatedConnection() throws SQLException {
+        if (dataSource == null) {
+            initConnectionPool();
         }
+        Properties props = new Properties();
+        props.setProperty("user", dataSource.getUsername());
+        props.setProperty("password", dataSource.getPassword());
+        props.setProperty("tcpKeepAlive", "true");
+        return DriverManager.getConnection(dataSource.getJdbcUrl(), props);
+    }
+
+    /**
+     * Envolve um statement criado fora do proxy do pool para que suas execuções
+     * também apareçam nos histogramas de comandos SQL
+     * @param statement statement criado na conexão física
+     * @param sql texto do comando
+     * @return statement instrumentado
+     * @throws SQLException em caso de erro ao obter a conexão do statement
+     */
+    public static PreparedStatement instrument(PreparedStatement statement, String sql) throws SQLException {
+        return new InstrumentedPreparedStatement(statement, statement.getConnection(), sql);
+    }
 
-        // Usa um Proxy para interceptar o método close() sem precisar implementar todos os métodos da interface
-        return (Connection) Proxy.newProxyInstance(
-                Connection.class.getClassLoader(),
-                new Class[] { Connection.class },
-                (proxy, method, args) -> {
-                    // Intercepta o método close para decrementar o contador
-                    if (method.getName().equals("close")) {
-                        activeConnections.decrementAndGet();
-                    }
-
-                    // Invoca o método original na conexão
-                    return method.invoke(conn, args);
-                }
-        );
+    /**
+     * Expõe o estado do pool como gauges em /metrics
+     */
+    private static void registerPoolGauges() {
+        Metrics.gauge("db_pool_max", () -> MAX_POOL_SIZE);
+        Metrics.gauge("db_pool_in_use", activeConnections::get);
+
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool != null) {
+            Metrics.gauge("db_pool_active", pool::getActiveConnections);
+            Metrics.gauge("db_pool_idle", pool::getIdleConnections);
+            Metrics.gauge("db_pool_total", pool::getTotalConnections);
+            Metrics.gauge("db_pool_waiting_threads", pool::getThreadsAwaitingConnection);
+        }
     }
 
     /**
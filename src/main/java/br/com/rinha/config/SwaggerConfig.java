@@ -1,12 +1,11 @@
 package br.com.rinha.config;
 
-import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
-import com.sun.net.httpserver.HttpServer;
+import br.com.rinha.http.HttpContext;
+import br.com.rinha.http.Route;
+import br.com.rinha.http.Router;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -69,51 +68,38 @@ public class SwaggerConfig {
     }
 
     /**
-     * Registra os endpoints do Swagger no servidor HTTP
-     * @param server Servidor HTTP
+     * Registra os endpoints do Swagger na tabela de rotas
+     * @param router Tabela de rotas
      */
-    public static void registerSwaggerEndpoints(HttpServer server) {
+    public static void registerSwaggerEndpoints(Router router) {
         // Endpoint para a interface Swagger UI
-        server.createContext("/swagger", new SwaggerUIHandler());
+        router.register(Route.SWAGGER_UI, "GET", "/swagger");
 
         // Endpoint para o arquivo de especificação OpenAPI
-        server.createContext("/api-docs", new ApiDocsHandler());
+        router.register(Route.API_DOCS, "GET", "/api-docs");
 
         System.out.println("Swagger UI disponível em: http://localhost:8080/swagger");
     }
 
     /**
      * Handler para a interface Swagger UI
+     * @param context Contexto da requisição HTTP
+     * @throws IOException em caso de erro de I/O
      */
-    static class SwaggerUIHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            // Retorna a página HTML do Swagger UI
-            byte[] response = SWAGGER_HTML.getBytes(StandardCharsets.UTF_8);
-            exchange.getResponseHeaders().set("Content-Type", "text/html");
-            exchange.sendResponseHeaders(200, response.length);
-            try (OutputStream os = exchange.getResponseBody()) {
-                os.write(response);
-            }
-        }
+    public static void handleSwaggerUi(HttpContext context) throws IOException {
+        // Retorna a página HTML do Swagger UI
+        context.send(200, "text/html", SWAGGER_HTML.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
      * Handler para o arquivo de especificação OpenAPI
+     * @param context Contexto da requisição HTTP
+     * @throws IOException em caso de erro de I/O
      */
-    static class ApiDocsHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            // Retorna o conteúdo do arquivo swagger.yaml
-            String yamlContent = getSwaggerYaml();
-            byte[] response = yamlContent.getBytes(StandardCharsets.UTF_8);
-
-            exchange.getResponseHeaders().set("Content-Type", "application/yaml");
-            exchange.sendResponseHeaders(200, response.length);
-            try (OutputStream os = exchange.getResponseBody()) {
-                os.write(response);
-            }
-        }
+    public static void handleApiDocs(HttpContext context) throws IOException {
+        // Retorna o conteúdo do arquivo swagger.yaml
+        String yamlContent = getSwaggerYaml();
+        context.send(200, "application/yaml", yamlContent.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
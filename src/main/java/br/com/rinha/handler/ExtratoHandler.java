@@ -1,19 +1,22 @@
 package br.com.rinha.handler;
 
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.sun.net.httpserver.HttpExchange;
+import br.com.rinha.cache.SingleFlight;
+import br.com.rinha.cache.WTinyLfuCache;
+import br.com.rinha.config.AppConfig;
+import br.com.rinha.http.HttpContext;
 import br.com.rinha.model.Cliente;
 import br.com.rinha.model.Transacao;
+import br.com.rinha.repository.CacheBus;
 import br.com.rinha.repository.ClienteRepository;
 import br.com.rinha.repository.TransacaoRepository;
+import br.com.rinha.repository.TransacoesRecentes;
 import br.com.rinha.util.JsonUtil;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -23,82 +26,97 @@ import java.util.concurrent.TimeUnit;
 public class ExtratoHandler {
     private final ClienteRepository clienteRepository;
     private final TransacaoRepository transacaoRepository;
+    private final AppConfig.ExtratoMode mode = AppConfig.extratoMode();
 
-    // Cache para clientes inexistentes para economizar consultas
-    private final ConcurrentHashMap<Integer, Boolean> nonExistentClients = new ConcurrentHashMap<>();
+    // Cache limitado de respostas de extrato, marcadas com a versão do saldo do cliente: válida até
+    // a próxima alteração de saldo enquanto o CacheBus estiver conectado, ou por 5 segundos quando não estiver
+    private final WTinyLfuCache<Integer, CachedExtrato> extratoCache =
+            new WTinyLfuCache<>("extrato", AppConfig.extratoCacheSize(), 0);
 
-    // Cache para respostas de extrato recentes (cache de 5 segundos)
-    private final ConcurrentHashMap<Integer, CachedExtrato> extratoCache = new ConcurrentHashMap<>();
+    // Cargas de extrato em andamento por cliente (cache miss simultâneo vira uma única consulta)
+    private final SingleFlight<Integer, byte[]> extratoLoads = new SingleFlight<>("extrato");
+
+    private final CacheBus cacheBus = CacheBus.getInstance();
 
     public ExtratoHandler() {
         this.clienteRepository = new ClienteRepository();
         this.transacaoRepository = new TransacaoRepository();
+
+        cacheBus.subscribe(new CacheBus.Listener() {
+            @Override
+            public void saldoAlterado(int clienteId, int saldo, int versao) {
+                // A versão já invalida a entrada; remover só libera o espaço antes
+                extratoCache.remove(clienteId);
+            }
+
+            @Override
+            public void reset() {
+                extratoCache.clear();
+            }
+        });
     }
 
     /**
      * Processa uma requisição de extrato
-     * @param exchange Objeto de troca HTTP
+     * @param context Contexto da requisição HTTP
      * @param clientId ID do cliente
      * @throws IOException em caso de erro de I/O
      */
-    public void handle(HttpExchange exchange, int clientId) throws IOException {
+    public void handle(HttpContext context, int clientId) throws IOException {
         long startTime = System.nanoTime();
 
         // Verifica cache de clientes inexistentes para respostas mais rápidas
-        if (nonExistentClients.containsKey(clientId)) {
-            sendResponse(exchange, 404, "Cliente não encontrado");
-            return;
-        }
-
-        // Verifica se há uma resposta em cache válida
-        CachedExtrato cachedExtrato = extratoCache.get(clientId);
-        if (cachedExtrato != null && !cachedExtrato.isExpired()) {
-            // Usa a resposta em cache
-            exchange.getResponseHeaders().set("X-Cache", "HIT");
-            exchange.getResponseHeaders().set("Content-Type", "application/json");
-            exchange.getResponseHeaders().set("Cache-Control", "public, max-age=5");
-
-            byte[] response = cachedExtrato.getResponseBytes();
-            exchange.sendResponseHeaders(200, response.length);
-            try (OutputStream os = exchange.getResponseBody()) {
-                os.write(response);
-            }
+        if (clienteRepository.isKnownMissing(clientId)) {
+            sendResponse(context, 404, "Cliente não encontrado");
             return;
         }
 
+        // Verifica se há uma resposta em cache válida (apenas quando o extrato vem do banco)
         try {
-            // Obter o cliente (usando cache na repository)
-            Cliente cliente = clienteRepository.findById(clientId);
-
-            if (cliente == null) {
-                // Armazena cliente inexistente no cache
-                nonExistentClients.put(clientId, Boolean.TRUE);
-                sendResponse(exchange, 404, "Cliente não encontrado");
+            CachedExtrato cachedExtrato = mode == AppConfig.ExtratoMode.BANCO ? extratoCache.get(clientId) : null;
+            if (cachedExtrato != null && isValid(clientId, cachedExtrato)) {
+                // Usa a resposta em cache
+                context.setHeader("X-Cache", "HIT");
+                context.setHeader("Cache-Control", "public, max-age=5");
+                context.send(200, "application/json", cachedExtrato.getResponseBytes());
                 return;
             }
 
-            // Obter as últimas transações
-            List<Transacao> transacoes = transacaoRepository.getLatestTransactions(clientId);
-
-            // Criar resposta JSON
-            ObjectNode response = JsonUtil.createExtractResponse(cliente, transacoes);
+            if (mode == AppConfig.ExtratoMode.JSON) {
+                // O banco devolve o extrato pronto; os bytes vão direto para a resposta
+                byte[] extratoJson = extratoLoads.execute(clientId, () -> transacaoRepository.getExtratoJson(clientId));
+                if (extratoJson == null) {
+                    clienteRepository.markMissing(clientId);
+                    sendResponse(context, 404, "Cliente não encontrado");
+                    return;
+                }
+                context.setHeader("Cache-Control", "no-store");
+                context.send(200, "application/json", extratoJson);
+                return;
+            }
 
-            // Serializar resposta para bytes
-            byte[] responseBytes = JsonUtil.getObjectMapper().writeValueAsBytes(response);
+            // No modo banco, requisições simultâneas do mesmo cliente compartilham uma única
+            // consulta e serialização, em vez de cada uma ocupar uma conexão do pool
+            byte[] responseBytes = mode == AppConfig.ExtratoMode.BANCO
+                    ? extratoLoads.execute(clientId, () -> buildExtrato(clientId))
+                    : buildExtrato(clientId);
 
-            // Armazenar no cache
-            extratoCache.put(clientId, new CachedExtrato(responseBytes));
+            if (responseBytes == null) {
+                // O repositório já registrou o cliente inexistente no cache negativo
+                sendResponse(context, 404, "Cliente não encontrado");
+                return;
+            }
 
-            // Adicionar cabeçalhos
-            exchange.getResponseHeaders().set("X-Cache", "MISS");
-            exchange.getResponseHeaders().set("Cache-Control", "public, max-age=5");
-            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            if (mode == AppConfig.ExtratoMode.BANCO) {
+                // Adicionar cabeçalhos
+                context.setHeader("X-Cache", "MISS");
+                context.setHeader("Cache-Control", "public, max-age=5");
+            } else {
+                context.setHeader("Cache-Control", "no-store");
+            }
 
             // Enviar resposta
-            exchange.sendResponseHeaders(200, responseBytes.length);
-            try (OutputStream os = exchange.getResponseBody()) {
-                os.write(responseBytes);
-            }
+            context.send(200, "application/json", responseBytes);
 
             // Registrar métrica de tempo
             long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
@@ -112,30 +130,84 @@ public class ExtratoHandler {
             e.printStackTrace();
 
             // Resposta específica para diferentes tipos de erros SQL
-            if (e.getMessage().contains("deadlock") || e.getMessage().contains("timeout")) {
-                sendResponse(exchange, 503, "Serviço temporariamente indisponível, tente novamente");
+            // (prazo da requisição esgotado e comando cancelado por timeout também são temporários)
+            if (e instanceof SQLTimeoutException || "57014".equals(e.getSQLState())
+                    || e.getMessage().contains("deadlock") || e.getMessage().contains("timeout")) {
+                sendResponse(context, 503, "Serviço temporariamente indisponível, tente novamente");
             } else {
-                sendResponse(exchange, 500, "Erro interno do servidor: " + e.getMessage());
+                sendResponse(context, 500, "Erro interno do servidor: " + e.getMessage());
             }
         } catch (Exception e) {
             // Log de erro genérico
             System.err.println("Erro não esperado ao obter extrato: " + e.getMessage());
             e.printStackTrace();
-            sendResponse(exchange, 500, "Erro interno do servidor");
+            sendResponse(context, 500, "Erro interno do servidor");
         }
     }
 
+    /**
+     * Monta a resposta do extrato e, no modo banco, guarda no cache
+     * @param clientId ID do cliente
+     * @return JSON do extrato em bytes, ou null se o cliente não existe
+     * @throws SQLException em caso de erro no banco de dados
+     */
+    private byte[] buildExtrato(int clientId) throws SQLException {
+        // Obter o cliente (usando cache na repository)
+        Cliente cliente = clienteRepository.findById(clientId);
+        if (cliente == null) {
+            return null;
+        }
+
+        // Lida antes de consultar as transações: se o saldo mudar durante a consulta,
+        // a resposta fica marcada com a versão antiga e não será reaproveitada
+        int versao = cliente.getVersao();
+
+        // Obter as últimas transações: do anel em memória ou direto do banco
+        List<Transacao> transacoes = mode == AppConfig.ExtratoMode.MEMORIA
+                ? TransacoesRecentes.obter(clientId, transacaoRepository)
+                : transacaoRepository.getLatestTransactions(clientId);
+
+        // Criar resposta JSON direto em bytes
+        byte[] responseBytes = JsonUtil.createExtractResponse(cliente, transacoes);
+
+        if (mode == AppConfig.ExtratoMode.BANCO) {
+            // Armazenar no cache
+            extratoCache.put(clientId, new CachedExtrato(responseBytes, versao));
+        }
+        return responseBytes;
+    }
+
+    /**
+     * Verifica se a resposta em cache ainda reflete o saldo atual: a versão do cliente não mudou
+     * e os 5 segundos não passaram. O prazo vale mesmo com o CacheBus saudável: no modo async a versão
+     * sobe antes de o histórico ser gravado, então um extrato montado nesse intervalo tem a versão nova
+     * sem a última transação, e data_extrato não pode envelhecer indefinidamente
+     */
+    private boolean isValid(int clientId, CachedExtrato cachedExtrato) throws SQLException {
+        if (cachedExtrato.isExpired()) {
+            return false;
+        }
+        Cliente cliente = clienteRepository.findById(clientId);
+        return cliente != null && cliente.getVersao() == cachedExtrato.getVersao();
+    }
+
     /**
      * Classe interna para armazenar respostas em cache
      */
     private static class CachedExtrato {
         private final byte[] responseBytes;
         private final long timestamp;
-        private static final long TTL_MS = 5000; // Cache por 5 segundos
+        private final int versao;
+        private static final long TTL_MS = 5000; // Cache por no máximo 5 segundos
 
-        public CachedExtrato(byte[] responseBytes) {
+        public CachedExtrato(byte[] responseBytes, int versao) {
             this.responseBytes = responseBytes;
             this.timestamp = System.currentTimeMillis();
+            this.versao = versao;
+        }
+
+        public int getVersao() {
+            return versao;
         }
 
         public byte[] getResponseBytes() {
@@ -149,12 +221,7 @@ public class ExtratoHandler {
 
     // Métodos utilitários
 
-    private void sendResponse(HttpExchange exchange, int statusCode, String message) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "text/plain");
-        byte[] responseBytes = message.getBytes(StandardCharsets.UTF_8);
-        exchange.sendResponseHeaders(statusCode, responseBytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(responseBytes);
-        }
+    private void sendResponse(HttpContext context, int statusCode, String message) throws IOException {
+        context.send(statusCode, "text/plain", message.getBytes(StandardCharsets.UTF_8));
     }
 }
\ No newline at end of file
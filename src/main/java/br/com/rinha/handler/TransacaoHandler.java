@@ -1,20 +1,20 @@
 package br.com.rinha.handler;
 
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.sun.net.httpserver.HttpExchange;
+import br.com.rinha.config.AppConfig;
+import br.com.rinha.http.HttpContext;
 import br.com.rinha.model.Transacao;
 import br.com.rinha.repository.ClienteRepository;
 import br.com.rinha.repository.TransacaoRepository;
+import br.com.rinha.repository.TransacoesRecentes;
 import br.com.rinha.util.JsonUtil;
+import br.com.rinha.util.TransacaoParser;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.concurrent.ConcurrentHashMap;
+import java.sql.SQLTimeoutException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Handler para processar requisições de transações
@@ -23,12 +23,8 @@ import java.util.concurrent.atomic.AtomicLong;
 public class TransacaoHandler {
     private final ClienteRepository clienteRepository;
     private final TransacaoRepository transacaoRepository;
-
-    // Métricas para monitoramento de desempenho
-    private final ConcurrentHashMap<Integer, AtomicLong> clientRequestCount = new ConcurrentHashMap<>();
-
-    // Cache para clientes inexistentes para economizar consultas
-    private final ConcurrentHashMap<Integer, Boolean> nonExistentClients = new ConcurrentHashMap<>();
+    private final AppConfig.WriteMode writeMode = AppConfig.writeMode();
+    private final boolean extratoEmMemoria = AppConfig.extratoMode() == AppConfig.ExtratoMode.MEMORIA;
 
     public TransacaoHandler() {
         this.clienteRepository = new ClienteRepository();
@@ -44,79 +40,78 @@ public class TransacaoHandler {
 
     /**
      * Processa uma requisição de transação
-     * @param exchange Objeto de troca HTTP
+     * @param context Contexto da requisição HTTP
      * @param clientId ID do cliente
      * @throws IOException em caso de erro de I/O
      */
-    public void handle(HttpExchange exchange, int clientId) throws IOException {
+    public void handle(HttpContext context, int clientId) throws IOException {
         long startTime = System.nanoTime();
 
         // Incrementa contador de requisições para o cliente
-        clientRequestCount.computeIfAbsent(clientId, k -> new AtomicLong()).incrementAndGet();
+        clienteRepository.recordRequest(clientId);
 
         // Verifica cache de clientes inexistentes para respostas mais rápidas
-        if (nonExistentClients.containsKey(clientId)) {
-            sendResponse(exchange, 404, "Cliente não encontrado");
+        if (clienteRepository.isKnownMissing(clientId)) {
+            sendResponse(context, 404, "Cliente não encontrado");
             return;
         }
 
-        // Ler o corpo da requisição de forma otimizada
-        byte[] requestBodyBytes;
+        // Ler o corpo da requisição diretamente do buffer da engine
+        byte[] requestBody;
         try {
-            requestBodyBytes = exchange.getRequestBody().readAllBytes();
+            requestBody = context.bodyBuffer();
         } catch (IOException e) {
-            sendResponse(exchange, 400, "Erro ao ler corpo da requisição");
+            sendResponse(context, 400, "Erro ao ler corpo da requisição");
             return;
         }
 
-        // Validar e analisar a requisição
-        if (requestBodyBytes.length == 0) {
-            sendResponse(exchange, 422, "Corpo da requisição vazio");
+        // Analisar e validar a requisição em uma única passada
+        TransacaoParser parser = new TransacaoParser();
+        if (!parser.parse(requestBody, context.bodyOffset(), context.bodyLength())) {
+            sendResponse(context, 422, "Dados da transação inválidos");
             return;
         }
 
-        ObjectNode transactionJson;
-        try {
-            transactionJson = JsonUtil.getObjectMapper().readValue(requestBodyBytes, ObjectNode.class);
-        } catch (Exception e) {
-            sendResponse(exchange, 422, "Formato JSON inválido");
-            return;
-        }
-
-        // Extrair e validar os campos da transação
-        if (!isValidTransactionJson(transactionJson)) {
-            sendResponse(exchange, 422, "Dados da transação inválidos");
-            return;
-        }
-
-        int valor = transactionJson.get("valor").asInt();
-        String tipo = transactionJson.get("tipo").asText();
-        String descricao = transactionJson.get("descricao").asText();
+        int valor = parser.getValor();
+        String tipo = parser.getTipo();
+        String descricao = parser.getDescricao();
 
         try {
             // Verificar se o cliente existe (usando cache para performance)
+            // (o repositório registra o cliente inexistente no cache negativo)
             if (!clienteRepository.clientExists(clientId)) {
-                // Armazena cliente inexistente no cache
-                nonExistentClients.put(clientId, Boolean.TRUE);
-                sendResponse(exchange, 404, "Cliente não encontrado");
+                sendResponse(context, 404, "Cliente não encontrado");
                 return;
             }
 
             // Processar a transação usando atualização atômica com retry
-            int[] result = clienteRepository.atomicUpdate(clientId, tipo, valor);
+            // (nos modos procedure/cte/actor/group o histórico é gravado no mesmo round trip)
+            Transacao transacao = new Transacao(clientId, valor, tipo, descricao);
+            int[] result = switch (writeMode) {
+                case ASYNC -> clienteRepository.atomicUpdate(clientId, tipo, valor);
+                case PROCEDURE -> clienteRepository.atomicUpdateWithProcedure(transacao);
+                case CTE -> clienteRepository.atomicUpdateWithCte(transacao);
+                case ACTOR -> clienteRepository.atomicUpdateWithActor(transacao);
+                case GROUP -> clienteRepository.atomicUpdateWithGroupCommit(transacao);
+            };
             int saldo = result[0];
             int limite = result[1];
             int success = result[2];
 
             if (success == 0) {
-                sendResponse(exchange, 422, "Saldo insuficiente");
+                sendResponse(context, 422, "Saldo insuficiente");
                 return;
             }
 
-            // Registrar a transação no histórico (assíncrono para não bloquear a resposta)
+            // Registrar a transação nas últimas do cliente e no histórico (assíncrono para não bloquear a resposta)
+            // (enfileira antes: se a carga do anel falhar, o histórico ainda recebe a transação)
             try {
-                Transacao transacao = new Transacao(clientId, valor, tipo, descricao);
-                transacaoRepository.saveAsync(transacao);
+                if (writeMode == AppConfig.WriteMode.ASYNC) {
+                    transacaoRepository.saveAsync(transacao);
+                }
+                if (extratoEmMemoria) {
+                    TransacoesRecentes.registrar(transacao, transacaoRepository);
+                }
             } catch (Exception e) {
                 // Log do erro, mas não falha a requisição principal
                 System.err.println("Erro ao salvar transação assincronamente: " + e.getMessage());
@@ -124,13 +119,12 @@ public class TransacaoHandler {
             }
 
             // Enviar resposta otimizada
-            ObjectNode response = JsonUtil.createTransactionResponse(limite, saldo);
+            byte[] response = JsonUtil.createTransactionResponse(limite, saldo);
 
             // Adicionar cabeçalho de cache para clientes
-            exchange.getResponseHeaders().set("Cache-Control", "no-store");
-            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            context.setHeader("Cache-Control", "no-store");
 
-            sendJsonResponse(exchange, 200, response);
+            context.send(200, "application/json", response);
 
             // Registrar métrica de tempo
             long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
@@ -144,62 +138,24 @@ public class TransacaoHandler {
             e.printStackTrace();
 
             // Resposta específica para diferentes tipos de erros SQL
-            if (e.getMessage().contains("deadlock") || e.getMessage().contains("timeout")) {
-                sendResponse(exchange, 503, "Serviço temporariamente indisponível, tente novamente");
+            // (prazo da requisição esgotado e comando cancelado por timeout também são temporários)
+            if (e instanceof SQLTimeoutException || "57014".equals(e.getSQLState())
+                    || e.getMessage().contains("deadlock") || e.getMessage().contains("timeout")) {
+                sendResponse(context, 503, "Serviço temporariamente indisponível, tente novamente");
             } else {
-                sendResponse(exchange, 500, "Erro interno do servidor: " + e.getMessage());
+                sendResponse(context, 500, "Erro interno do servidor: " + e.getMessage());
             }
         } catch (Exception e) {
             // Log de erro genérico
             System.err.println("Erro não esperado ao processar transação: " + e.getMessage());
             e.printStackTrace();
-            sendResponse(exchange, 500, "Erro interno do servidor");
+            sendResponse(context, 500, "Erro interno do servidor");
         }
     }
 
     // Métodos utilitários
 
-    private void sendResponse(HttpExchange exchange, int statusCode, String message) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "text/plain");
-        byte[] responseBytes = message.getBytes(StandardCharsets.UTF_8);
-        exchange.sendResponseHeaders(statusCode, responseBytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(responseBytes);
-        }
-    }
-
-    private void sendJsonResponse(HttpExchange exchange, int statusCode, ObjectNode json) throws IOException {
-        byte[] response = JsonUtil.getObjectMapper().writeValueAsBytes(json);
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(statusCode, response.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response);
-        }
-    }
-
-    private boolean isValidTransactionJson(ObjectNode json) {
-        try {
-            // Verificar se todos os campos obrigatórios estão presentes
-            if (!json.has("valor") || !json.has("tipo") || !json.has("descricao")) {
-                return false;
-            }
-
-            // Validar valor
-            if (!json.get("valor").isInt() || json.get("valor").asInt() <= 0) {
-                return false;
-            }
-
-            // Validar tipo
-            String type = json.get("tipo").asText();
-            if (!"c".equals(type) && !"d".equals(type)) {
-                return false;
-            }
-
-            // Validar descrição
-            String description = json.get("descricao").asText();
-            return description != null && description.length() >= 1 && description.length() <= 10;
-        } catch (Exception e) {
-            return false;
-        }
+    private void sendResponse(HttpContext context, int statusCode, String message) throws IOException {
+        context.send(statusCode, "text/plain", message.getBytes(StandardCharsets.UTF_8));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,147 @@
+package br.com.rinha.http;
+
+import br.com.rinha.metrics.Metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limite adaptativo de requisições simultâneas (algoritmo de gradiente, como o Gradient2 do
+ * concurrency-limits da Netflix), alimentado pela latência observada no banco
+ *
+ * A cada janela a latência média das amostras (curto prazo) é comparada com uma média longa:
+ * se o banco ficou mais lento que o normal (com tolerância de 50%), o limite cai na proporção;
+ * se não, cresce aos poucos (raiz quadrada do limite). Requisições acima do limite são recusadas
+ * na hora, em vez de esperar até CONNECTION_TIMEOUT por uma conexão do pool.
+ */
+public final class AdaptiveLimiter {
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // Amostras mínimas em uma janela para recalcular o limite
+    private static final int MIN_SAMPLES = 10;
+
+    // Quanto a latência curta pode passar da longa antes de o limite cair
+    private static final double TOLERANCE = 1.5;
+
+    // Peso de cada janela na média longa e de cada novo cálculo no limite
+    private static final double LONG_WINDOW_WEIGHT = 0.05;
+    private static final double SMOOTHING = 0.2;
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private volatile double limit;
+    private double longLatency;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final LongAdder sampleSum = new LongAdder();
+    private final LongAdder sampleCount = new LongAdder();
+    private final AtomicLong nextUpdate = new AtomicLong(System.nanoTime() + WINDOW_NANOS);
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    private final LongAdder rejected = Metrics.counter("admission_rejected");
+
+    /**
+     * @param enabled false para apenas contar as requisições em andamento, sem recusar nenhuma
+     * @param initialLimit limite inicial
+     * @param minLimit limite mínimo
+     * @param maxLimit limite máximo
+     */
+    public AdaptiveLimiter(boolean enabled, int initialLimit, int minLimit, int maxLimit) {
+        this.enabled = enabled;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+
+        Metrics.gauge("admission_limit", () -> (long) limit);
+        Metrics.gauge("admission_in_flight", inFlight::get);
+    }
+
+    /**
+     * Tenta admitir uma requisição; se admitida, o chamador deve chamar release() ao terminar
+     * @return false se o limite foi atingido (responder 503 sem processar)
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (enabled && current >= (int) limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                int max = maxInFlight.get();
+                while (current + 1 > max && !maxInFlight.compareAndSet(max, current + 1)) {
+                    max = maxInFlight.get();
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Libera a vaga de uma requisição admitida
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Registra a latência de um uso do banco (espera pelo pool + tempo com a conexão)
+     * @param latencyNanos latência observada
+     */
+    public void onSample(long latencyNanos) {
+        sampleSum.add(latencyNanos);
+        sampleCount.increment();
+
+        long now = System.nanoTime();
+        long next = nextUpdate.get();
+        if (now - next >= 0 && nextUpdate.compareAndSet(next, now + WINDOW_NANOS) && updateLock.tryLock()) {
+            try {
+                update();
+            } finally {
+                updateLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Recalcula o limite com as amostras da janela que terminou (uma thread por vez)
+     */
+    private void update() {
+        long count = sampleCount.sum();
+        if (count < MIN_SAMPLES) {
+            return;
+        }
+        double shortLatency = (double) sampleSum.sumThenReset() / count;
+        sampleCount.reset();
+        int peakInFlight = maxInFlight.getAndSet(inFlight.get());
+
+        if (longLatency == 0) {
+            longLatency = shortLatency;
+            return;
+        }
+        longLatency = longLatency * (1 - LONG_WINDOW_WEIGHT) + shortLatency * LONG_WINDOW_WEIGHT;
+
+        // Depois de uma degradação longa, a média longa volta devagar para não segurar o limite baixo
+        if (longLatency / shortLatency > 2) {
+            longLatency *= 0.95;
+        }
+
+        double current = limit;
+
+        // Com menos da metade do limite em uso, a latência não diz nada sobre a capacidade
+        if (peakInFlight < current / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatency / shortLatency));
+        double target = current * gradient + Math.sqrt(current);
+        double updated = current * (1 - SMOOTHING) + target * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, updated));
+    }
+}
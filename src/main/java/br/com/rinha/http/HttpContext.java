@@ -0,0 +1,81 @@
+package br.com.rinha.http;
+
+import java.io.IOException;
+
+/**
+ * Abstração de uma requisição/resposta HTTP independente da engine
+ * Permite que os handlers funcionem tanto com o servidor do JDK quanto com a engine NIO
+ */
+public interface HttpContext {
+
+    /**
+     * Método HTTP da requisição (GET, POST...)
+     * @return método da requisição
+     */
+    String method();
+
+    /**
+     * Caminho da requisição, sem query string
+     * @return caminho da requisição
+     */
+    String path();
+
+    /**
+     * Resolve a rota da requisição na tabela informada
+     * @param router tabela de rotas
+     * @return rota e id empacotados (ver Router.route e Router.clientId)
+     */
+    default long route(Router router) {
+        return router.match(method(), path());
+    }
+
+    /**
+     * Buffer que contém o corpo da requisição
+     * O corpo ocupa as posições [bodyOffset(), bodyOffset() + bodyLength())
+     * @return buffer com o corpo da requisição
+     * @throws IOException em caso de erro ao ler o corpo
+     */
+    byte[] bodyBuffer() throws IOException;
+
+    /**
+     * Posição inicial do corpo dentro de bodyBuffer()
+     * @return posição inicial do corpo
+     */
+    int bodyOffset();
+
+    /**
+     * Tamanho do corpo da requisição em bytes
+     * @return tamanho do corpo
+     */
+    int bodyLength();
+
+    /**
+     * Define um cabeçalho adicional da resposta
+     * Deve ser chamado antes de send
+     * @param name nome do cabeçalho
+     * @param value valor do cabeçalho
+     */
+    void setHeader(String name, String value);
+
+    /**
+     * Envia a resposta completa
+     * @param statusCode código de status HTTP
+     * @param contentType tipo do conteúdo
+     * @param body buffer com o corpo da resposta
+     * @param offset posição inicial do corpo no buffer
+     * @param length tamanho do corpo
+     * @throws IOException em caso de erro de I/O
+     */
+    void send(int statusCode, String contentType, byte[] body, int offset, int length) throws IOException;
+
+    /**
+     * Envia a resposta completa
+     * @param statusCode código de status HTTP
+     * @param contentType tipo do conteúdo
+     * @param body corpo da resposta
+     * @throws IOException em caso de erro de I/O
+     */
+    default void send(int statusCode, String contentType, byte[] body) throws IOException {
+        send(statusCode, contentType, body, 0, body.length);
+    }
+}
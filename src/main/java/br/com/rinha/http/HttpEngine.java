@@ -0,0 +1,22 @@
+package br.com.rinha.http;
+
+import java.io.IOException;
+
+/**
+ * Engine de transporte HTTP selecionável na inicialização
+ */
+public interface HttpEngine {
+
+    /**
+     * Inicia o servidor na porta informada
+     * @param port porta de escuta
+     * @param handler handler que recebe todas as requisições
+     * @throws IOException em caso de erro ao abrir o socket
+     */
+    void start(int port, RequestHandler handler) throws IOException;
+
+    /**
+     * Encerra o servidor
+     */
+    void stop();
+}
@@ -0,0 +1,101 @@
+package br.com.rinha.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+
+/**
+ * Engine HTTP baseada no servidor nativo do JDK (com.sun.net.httpserver)
+ * Mantida como fallback da engine NIO
+ */
+public class JdkHttpEngine implements HttpEngine {
+    private HttpServer server;
+
+    @Override
+    public void start(int port, RequestHandler handler) throws IOException {
+        // Criar servidor HTTP com um backlog maior para alta concorrência
+        server = HttpServer.create(new InetSocketAddress(port), 10000);
+
+        // Todas as rotas passam pelo mesmo handler
+        server.createContext("/", exchange -> {
+            try {
+                handler.handle(new JdkHttpContext(exchange));
+            } finally {
+                exchange.close();
+            }
+        });
+
+        // Usar virtual threads para processamento de requisições
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    @Override
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Adaptador de HttpExchange para HttpContext
+     */
+    private static class JdkHttpContext implements HttpContext {
+        private final HttpExchange exchange;
+        private byte[] body;
+
+        JdkHttpContext(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        @Override
+        public String method() {
+            return exchange.getRequestMethod();
+        }
+
+        @Override
+        public String path() {
+            return exchange.getRequestURI().getPath();
+        }
+
+        @Override
+        public byte[] bodyBuffer() throws IOException {
+            if (body == null) {
+                body = exchange.getRequestBody().readAllBytes();
+            }
+            return body;
+        }
+
+        @Override
+        public int bodyOffset() {
+            return 0;
+        }
+
+        @Override
+        public int bodyLength() {
+            try {
+                return bodyBuffer().length;
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            exchange.getResponseHeaders().set(name, value);
+        }
+
+        @Override
+        public void send(int statusCode, String contentType, byte[] body, int offset, int length) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(statusCode, length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body, offset, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,694 @@
+package br.com.rinha.http;
+
+import br.com.rinha.config.AppConfig;
+import br.com.rinha.metrics.Metrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Engine HTTP/1.1 não bloqueante baseada em seletores NIO e buffers diretos
+ * Uma única thread de plataforma faz accept e leitura; cada requisição completa
+ * é processada em uma virtual thread, que escreve a resposta diretamente no socket.
+ * Os buffers são alocados uma vez por conexão e reutilizados entre requisições (keep-alive).
+ *
+ * Conexões sem progresso por HTTP_IDLE_TIMEOUT_MS (ociosas, com uma requisição incompleta ou com
+ * a resposta parada porque o cliente não lê) são fechadas pela thread do seletor, e o total de
+ * conexões abertas é limitado por HTTP_MAX_CONNECTIONS.
+ */
+public class NioHttpEngine implements HttpEngine {
+    // Tamanho máximo de uma requisição (linha, cabeçalhos e corpo)
+    private static final int REQUEST_BUFFER_SIZE = 4096;
+
+    // Tamanho do buffer direto de saída; respostas maiores são escritas em duas partes
+    private static final int RESPONSE_BUFFER_SIZE = 4096;
+
+    // Resultados do parser de requisição
+    private static final int INCOMPLETE = 0;
+    private static final int COMPLETE = 1;
+
+    private static final byte[] CONTENT_LENGTH = ascii("content-length");
+    private static final byte[] CONNECTION = ascii("connection");
+    private static final byte[] TRANSFER_ENCODING = ascii("transfer-encoding");
+    private static final byte[] CLOSE = ascii("close");
+    private static final byte[] KEEP_ALIVE = ascii("keep-alive");
+    private static final byte[] HTTP_1_0 = ascii("HTTP/1.0");
+
+    private static final byte[] HEADER_CONTENT_TYPE = ascii("Content-Type: ");
+    private static final byte[] HEADER_CONTENT_LENGTH = ascii("\r\nContent-Length: ");
+    private static final byte[] HEADER_CONNECTION_CLOSE = ascii("Connection: close\r\n");
+    private static final byte[] HEADER_SEPARATOR = ascii(": ");
+    private static final byte[] CRLF = ascii("\r\n");
+
+    private static final byte[] STATUS_200 = ascii("HTTP/1.1 200 OK\r\n");
+    private static final byte[] STATUS_400 = ascii("HTTP/1.1 400 Bad Request\r\n");
+    private static final byte[] STATUS_404 = ascii("HTTP/1.1 404 Not Found\r\n");
+    private static final byte[] STATUS_411 = ascii("HTTP/1.1 411 Length Required\r\n");
+    private static final byte[] STATUS_413 = ascii("HTTP/1.1 413 Payload Too Large\r\n");
+    private static final byte[] STATUS_422 = ascii("HTTP/1.1 422 Unprocessable Entity\r\n");
+    private static final byte[] STATUS_431 = ascii("HTTP/1.1 431 Request Header Fields Too Large\r\n");
+    private static final byte[] STATUS_500 = ascii("HTTP/1.1 500 Internal Server Error\r\n");
+    private static final byte[] STATUS_503 = ascii("HTTP/1.1 503 Service Unavailable\r\n");
+
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    // Intervalo máximo entre verificações de conexões ociosas
+    private static final long MAX_SWEEP_INTERVAL_MS = 1000;
+
+    private final long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(AppConfig.httpIdleTimeoutMs());
+    private final int maxConnections = AppConfig.httpMaxConnections();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final LongAdder idleClosed = Metrics.counter("http_idle_closed");
+    private final LongAdder rejectedConnections = Metrics.counter("http_connections_rejected");
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ExecutorService executor;
+    private RequestHandler handler;
+    private volatile boolean running;
+
+    @Override
+    public void start(int port, RequestHandler handler) throws IOException {
+        this.handler = handler;
+        this.selector = Selector.open();
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        // Socket de escuta com backlog maior para alta concorrência
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port), 10000);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        Metrics.gauge("http_open_connections", openConnections::get);
+
+        running = true;
+        Thread.ofPlatform().name("nio-selector").start(this::selectLoop);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao encerrar engine NIO: " + e.getMessage());
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Laço principal da thread do seletor
+     */
+    private void selectLoop() {
+        // Sem timeout de ociosidade o seletor só acorda com eventos
+        long sweepIntervalMs = idleTimeoutNanos == 0
+                ? 0 : Math.max(1, Math.min(MAX_SWEEP_INTERVAL_MS, TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos) / 2));
+        long nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sweepIntervalMs);
+
+        while (running) {
+            try {
+                // Usa a variante com callback para não alocar o conjunto de chaves selecionadas
+                selector.select(this::processKey, sweepIntervalMs);
+
+                long now = System.nanoTime();
+                if (sweepIntervalMs > 0 && now - nextSweep >= 0) {
+                    closeIdleConnections(now);
+                    nextSweep = now + TimeUnit.MILLISECONDS.toNanos(sweepIntervalMs);
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Erro no seletor NIO: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Trata um evento de I/O
+     * @param key chave selecionada
+     */
+    private void processKey(SelectionKey key) {
+        try {
+            if (key.isAcceptable()) {
+                accept();
+                return;
+            }
+
+            NioConnection connection = (NioConnection) key.attachment();
+            if (key.isWritable()) {
+                connection.onWritable();
+            } else if (key.isReadable()) {
+                connection.onReadable();
+            }
+        } catch (CancelledKeyException e) {
+            // Conexão encerrada concorrentemente
+        }
+    }
+
+    /**
+     * Fecha as conexões sem progresso além do timeout: aguardando uma requisição (leitura habilitada)
+     * ou com a escrita da resposta parada (escrita habilitada). Sem nenhum interesse registrado, uma
+     * virtual thread está processando a requisição e a conexão não é tocada.
+     */
+    private void closeIdleConnections(long now) {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection connection) {
+                try {
+                    if (key.interestOps() != 0 && now - connection.lastActivity > idleTimeoutNanos) {
+                        idleClosed.increment();
+                        connection.close();
+                        // Uma virtual thread parada na escrita acorda e encontra o canal fechado
+                        Thread waiter = connection.writeWaiter;
+                        if (waiter != null) {
+                            LockSupport.unpark(waiter);
+                        }
+                    }
+                } catch (CancelledKeyException e) {
+                    // Conexão encerrada concorrentemente
+                }
+            }
+        }
+    }
+
+    /**
+     * Aceita todas as conexões pendentes
+     */
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                if (openConnections.get() >= maxConnections) {
+                    rejectedConnections.increment();
+                    channel.close();
+                    continue;
+                }
+                register(channel);
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao aceitar conexão: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prepara e registra a conexão aceita; se o cliente já a derrubou, fecha o canal sem
+     * interromper as demais aceitações. Só entra na contagem depois de registrada.
+     */
+    private void register(SocketChannel channel) {
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            NioConnection connection = new NioConnection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            openConnections.incrementAndGet();
+        } catch (IOException e) {
+            System.err.println("Erro ao preparar conexão aceita: " + e.getMessage());
+            try {
+                channel.close();
+            } catch (IOException closeError) {
+                // Ignora erros ao fechar
+            }
+        }
+    }
+
+    /**
+     * Estado de uma conexão HTTP; também atua como HttpContext da requisição corrente.
+     * Enquanto uma requisição está sendo processada, a leitura fica desabilitada (interestOps 0),
+     * então a thread do seletor e a virtual thread nunca acessam o estado ao mesmo tempo.
+     */
+    private final class NioConnection implements HttpContext, Runnable {
+        private final SocketChannel channel;
+        private SelectionKey key;
+
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(REQUEST_BUFFER_SIZE);
+        private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(RESPONSE_BUFFER_SIZE);
+
+        // Bytes recebidos e ainda não consumidos
+        private final byte[] data = new byte[REQUEST_BUFFER_SIZE];
+        private int filled;
+
+        // Posições da requisição corrente dentro de data
+        private int methodEnd;
+        private int pathStart;
+        private int pathEnd;
+        private int bodyStart;
+        private int contentLength;
+        private int requestEnd;
+        private boolean keepAlive;
+        private int rejectStatus;
+        private String method;
+        private String path;
+
+        // Cabeçalhos adicionais da resposta corrente
+        private final String[] headerNames = new String[8];
+        private final String[] headerValues = new String[8];
+        private int headerCount;
+        private boolean responded;
+
+        // Virtual thread aguardando o socket ficar disponível para escrita
+        private volatile Thread writeWaiter;
+
+        // Último progresso da conexão (System.nanoTime), para o timeout de ociosidade: byte recebido,
+        // fim da última resposta ou início/retomada de uma escrita parada
+        private volatile long lastActivity = System.nanoTime();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        NioConnection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Chamado pela thread do seletor quando há bytes para ler
+         */
+        void onReadable() {
+            int space = data.length - filled;
+            readBuffer.clear().limit(space);
+
+            int read;
+            try {
+                read = channel.read(readBuffer);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (read < 0) {
+                close();
+                return;
+            }
+
+            readBuffer.flip();
+            readBuffer.get(data, filled, read);
+            filled += read;
+            lastActivity = System.nanoTime();
+
+            if (parseRequest() == COMPLETE) {
+                // Suspende a leitura enquanto a requisição é processada
+                key.interestOps(0);
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * Chamado pela thread do seletor quando o socket volta a aceitar escrita
+         */
+        void onWritable() {
+            lastActivity = System.nanoTime();
+            key.interestOps(0);
+            Thread waiter = writeWaiter;
+            writeWaiter = null;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+
+        /**
+         * Processa as requisições completas disponíveis no buffer (inclusive pipelining)
+         */
+        @Override
+        public void run() {
+            do {
+                if (!process()) {
+                    return;
+                }
+            } while (parseRequest() == COMPLETE);
+
+            // Aguarda a próxima requisição; o timeout de ociosidade conta a partir daqui
+            lastActivity = System.nanoTime();
+            try {
+                key.interestOps(SelectionKey.OP_READ);
+                selector.wakeup();
+            } catch (CancelledKeyException e) {
+                close();
+            }
+        }
+
+        /**
+         * Processa a requisição corrente
+         * @return true se a conexão continua aberta
+         */
+        private boolean process() {
+            headerCount = 0;
+            responded = false;
+            method = null;
+            path = null;
+
+            try {
+                if (rejectStatus != 0) {
+                    keepAlive = false;
+                    send(rejectStatus, "text/plain", EMPTY_BODY);
+                    close();
+                    return false;
+                }
+
+                handler.handle(this);
+                if (!responded) {
+                    send(500, "text/plain", EMPTY_BODY);
+                }
+            } catch (IOException e) {
+                close();
+                return false;
+            } catch (RuntimeException e) {
+                System.err.println("Erro não tratado na requisição " + method() + " " + path() + ": " + e);
+                close();
+                return false;
+            }
+
+            if (!keepAlive) {
+                close();
+                return false;
+            }
+
+            // Descarta a requisição processada, preservando bytes da próxima
+            int remaining = filled - requestEnd;
+            if (remaining > 0) {
+                System.arraycopy(data, requestEnd, data, 0, remaining);
+            }
+            filled = remaining;
+            return true;
+        }
+
+        /**
+         * Analisa os bytes recebidos sem alocar objetos
+         * @return COMPLETE se há uma requisição completa (ou rejeitada) no buffer
+         */
+        private int parseRequest() {
+            rejectStatus = 0;
+
+            int headerEnd = indexOfHeaderEnd();
+            if (headerEnd < 0) {
+                return filled == data.length ? reject(431) : INCOMPLETE;
+            }
+
+            // Linha de requisição: METHOD SP PATH[?QUERY] SP VERSION CRLF
+            int lineEnd = indexOf((byte) '\r', 0, headerEnd);
+            int firstSpace = indexOf((byte) ' ', 0, lineEnd);
+            if (firstSpace <= 0) {
+                return reject(400);
+            }
+            int secondSpace = indexOf((byte) ' ', firstSpace + 1, lineEnd);
+            if (secondSpace < 0) {
+                return reject(400);
+            }
+            methodEnd = firstSpace;
+            pathStart = firstSpace + 1;
+            int query = indexOf((byte) '?', pathStart, secondSpace);
+            pathEnd = query < 0 ? secondSpace : query;
+            keepAlive = !regionEquals(secondSpace + 1, lineEnd, HTTP_1_0);
+
+            // Cabeçalhos relevantes: Content-Length, Connection e Transfer-Encoding
+            contentLength = 0;
+            int pos = lineEnd + 2;
+            while (pos < headerEnd - 2) {
+                int eol = indexOf((byte) '\r', pos, headerEnd);
+                int colon = indexOf((byte) ':', pos, eol);
+                if (colon > 0) {
+                    int valueStart = colon + 1;
+                    while (valueStart < eol && data[valueStart] == ' ') {
+                        valueStart++;
+                    }
+                    if (regionEquals(pos, colon, CONTENT_LENGTH)) {
+                        contentLength = parseDigits(valueStart, eol);
+                        if (contentLength < 0) {
+                            return reject(400);
+                        }
+                    } else if (regionEquals(pos, colon, CONNECTION)) {
+                        if (regionEquals(valueStart, eol, CLOSE)) {
+                            keepAlive = false;
+                        } else if (regionEquals(valueStart, eol, KEEP_ALIVE)) {
+                            keepAlive = true;
+                        }
+                    } else if (regionEquals(pos, colon, TRANSFER_ENCODING)) {
+                        // Corpo chunked não é suportado
+                        return reject(411);
+                    }
+                }
+                pos = eol + 2;
+            }
+
+            bodyStart = headerEnd;
+            requestEnd = headerEnd + contentLength;
+            if (requestEnd > data.length) {
+                return reject(413);
+            }
+            return requestEnd <= filled ? COMPLETE : INCOMPLETE;
+        }
+
+        private int reject(int statusCode) {
+            rejectStatus = statusCode;
+            return COMPLETE;
+        }
+
+        /**
+         * Procura o fim dos cabeçalhos (CRLF CRLF)
+         * @return posição logo após o separador ou -1
+         */
+        private int indexOfHeaderEnd() {
+            for (int i = 3; i < filled; i++) {
+                if (data[i] == '\n' && data[i - 1] == '\r' && data[i - 2] == '\n' && data[i - 3] == '\r') {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        private int indexOf(byte value, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (data[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Compara uma região do buffer com um literal ASCII em minúsculas, sem diferenciar maiúsculas
+         */
+        private boolean regionEquals(int from, int to, byte[] lowerCase) {
+            if (to - from != lowerCase.length) {
+                return false;
+            }
+            for (int i = 0; i < lowerCase.length; i++) {
+                byte b = data[from + i];
+                if (b >= 'A' && b <= 'Z') {
+                    b += 'a' - 'A';
+                }
+                byte expected = lowerCase[i];
+                if (expected >= 'A' && expected <= 'Z') {
+                    expected += 'a' - 'A';
+                }
+                if (b != expected) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int parseDigits(int from, int to) {
+            while (to > from && data[to - 1] == ' ') {
+                to--;
+            }
+            if (from == to || to - from > 9) {
+                return -1;
+            }
+            int value = 0;
+            for (int i = from; i < to; i++) {
+                int digit = data[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        @Override
+        public String method() {
+            if (method == null) {
+                if (methodEnd == 3 && data[0] == 'G' && data[1] == 'E' && data[2] == 'T') {
+                    method = "GET";
+                } else if (methodEnd == 4 && data[0] == 'P' && data[1] == 'O' && data[2] == 'S' && data[3] == 'T') {
+                    method = "POST";
+                } else {
+                    method = new String(data, 0, methodEnd, StandardCharsets.ISO_8859_1);
+                }
+            }
+            return method;
+        }
+
+        @Override
+        public String path() {
+            if (path == null) {
+                path = new String(data, pathStart, pathEnd - pathStart, StandardCharsets.ISO_8859_1);
+            }
+            return path;
+        }
+
+        @Override
+        public long route(Router router) {
+            // Resolve direto sobre os bytes da linha de requisição, sem criar Strings
+            return router.match(data, 0, methodEnd, pathStart, pathEnd);
+        }
+
+        @Override
+        public byte[] bodyBuffer() {
+            return data;
+        }
+
+        @Override
+        public int bodyOffset() {
+            return bodyStart;
+        }
+
+        @Override
+        public int bodyLength() {
+            return contentLength;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            for (int i = 0; i < headerCount; i++) {
+                if (headerNames[i].equalsIgnoreCase(name)) {
+                    headerValues[i] = value;
+                    return;
+                }
+            }
+            if (headerCount < headerNames.length) {
+                headerNames[headerCount] = name;
+                headerValues[headerCount] = value;
+                headerCount++;
+            }
+        }
+
+        @Override
+        public void send(int statusCode, String contentType, byte[] body, int offset, int length) throws IOException {
+            responded = true;
+
+            ByteBuffer out = writeBuffer;
+            out.clear();
+            out.put(statusLine(statusCode));
+            out.put(HEADER_CONTENT_TYPE);
+            putAscii(out, contentType);
+            out.put(HEADER_CONTENT_LENGTH);
+            putInt(out, length);
+            out.put(CRLF);
+            if (!keepAlive) {
+                out.put(HEADER_CONNECTION_CLOSE);
+            }
+            for (int i = 0; i < headerCount; i++) {
+                putAscii(out, headerNames[i]);
+                out.put(HEADER_SEPARATOR);
+                putAscii(out, headerValues[i]);
+                out.put(CRLF);
+            }
+            out.put(CRLF);
+
+            if (out.remaining() >= length) {
+                out.put(body, offset, length);
+                out.flip();
+                write(out);
+            } else {
+                // Resposta maior que o buffer direto: cabeçalhos e corpo em escritas separadas
+                out.flip();
+                write(out);
+                write(ByteBuffer.wrap(body, offset, length));
+            }
+        }
+
+        /**
+         * Escreve o buffer inteiro, aguardando o seletor quando o socket estiver cheio
+         */
+        private void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.write(buffer) == 0) {
+                    awaitWritable();
+                }
+            }
+        }
+
+        private void awaitWritable() throws IOException {
+            lastActivity = System.nanoTime();
+            writeWaiter = Thread.currentThread();
+            try {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } catch (CancelledKeyException e) {
+                writeWaiter = null;
+                throw new IOException("Conexão encerrada");
+            }
+            selector.wakeup();
+            while (writeWaiter != null && key.isValid()) {
+                LockSupport.park(this);
+            }
+        }
+
+        private void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            openConnections.decrementAndGet();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignora erros ao fechar
+            }
+        }
+    }
+
+    /**
+     * Linha de status pré-codificada para os códigos usados pela aplicação
+     */
+    private static byte[] statusLine(int statusCode) {
+        return switch (statusCode) {
+            case 200 -> STATUS_200;
+            case 400 -> STATUS_400;
+            case 404 -> STATUS_404;
+            case 411 -> STATUS_411;
+            case 413 -> STATUS_413;
+            case 422 -> STATUS_422;
+            case 431 -> STATUS_431;
+            case 500 -> STATUS_500;
+            case 503 -> STATUS_503;
+            default -> ascii("HTTP/1.1 " + statusCode + " Status\r\n");
+        };
+    }
+
+    private static void putAscii(ByteBuffer out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            out.put((byte) value.charAt(i));
+        }
+    }
+
+    private static void putInt(ByteBuffer out, int value) {
+        if (value >= 10) {
+            putInt(out, value / 10);
+        }
+        out.put((byte) ('0' + value % 10));
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,17 @@
+package br.com.rinha.http;
+
+import java.io.IOException;
+
+/**
+ * Ponto de entrada das requisições recebidas por uma engine HTTP
+ */
+@FunctionalInterface
+public interface RequestHandler {
+
+    /**
+     * Trata uma requisição
+     * @param context contexto da requisição
+     * @throws IOException em caso de erro de I/O
+     */
+    void handle(HttpContext context) throws IOException;
+}
@@ -0,0 +1,25 @@
+package br.com.rinha.http;
+
+/**
+ * Rotas conhecidas pela aplicação
+ */
+public enum Route {
+    TRANSACOES,
+    EXTRATO,
+    HEALTH,
+    METRICS,
+    SWAGGER_UI,
+    API_DOCS,
+    NOT_FOUND;
+
+    private static final Route[] VALUES = values();
+
+    /**
+     * Obtém a rota pelo ordinal sem alocar o array de values()
+     * @param ordinal ordinal da rota
+     * @return rota correspondente
+     */
+    static Route of(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
@@ -0,0 +1,129 @@
+package br.com.rinha.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tabela de rotas que resolve método e caminho diretamente sobre os bytes da linha de requisição
+ * Os padrões aceitam um único parâmetro numérico "{id}" (ex: /clientes/{id}/extrato).
+ * O resultado é empacotado em um long (rota e id) para que a resolução não aloque objetos.
+ */
+public class Router {
+    private static final String ID_PARAM = "{id}";
+
+    // Maior id aceito tem 9 dígitos, o que evita overflow de int
+    private static final int MAX_ID_DIGITS = 9;
+
+    private static final long NOT_FOUND = pack(Route.NOT_FOUND, 0);
+
+    private Entry[] entries = new Entry[0];
+
+    /**
+     * Entrada da tabela: método, prefixo antes do parâmetro e sufixo após ele
+     */
+    private record Entry(Route route, byte[] method, byte[] prefix, byte[] suffix) {
+    }
+
+    /**
+     * Registra uma rota
+     * @param route rota a ser retornada
+     * @param method método HTTP exigido ou null para aceitar qualquer método
+     * @param pattern caminho, opcionalmente contendo "{id}"
+     */
+    public synchronized void register(Route route, String method, String pattern) {
+        byte[] methodBytes = method == null ? null : method.getBytes(StandardCharsets.US_ASCII);
+        int param = pattern.indexOf(ID_PARAM);
+        Entry entry = param < 0
+                ? new Entry(route, methodBytes, pattern.getBytes(StandardCharsets.US_ASCII), null)
+                : new Entry(route, methodBytes,
+                        pattern.substring(0, param).getBytes(StandardCharsets.US_ASCII),
+                        pattern.substring(param + ID_PARAM.length()).getBytes(StandardCharsets.US_ASCII));
+
+        Entry[] updated = Arrays.copyOf(entries, entries.length + 1);
+        updated[entries.length] = entry;
+        entries = updated;
+    }
+
+    /**
+     * Resolve uma requisição a partir de regiões de um buffer de bytes
+     * @param buffer buffer com a linha de requisição
+     * @param methodStart início do método
+     * @param methodEnd fim (exclusivo) do método
+     * @param pathStart início do caminho
+     * @param pathEnd fim (exclusivo) do caminho, sem query string
+     * @return rota e id empacotados; use route(long) e clientId(long)
+     */
+    public long match(byte[] buffer, int methodStart, int methodEnd, int pathStart, int pathEnd) {
+        for (Entry entry : entries) {
+            if (entry.method != null && !regionEquals(buffer, methodStart, methodEnd, entry.method)) {
+                continue;
+            }
+
+            byte[] prefix = entry.prefix;
+            if (entry.suffix == null) {
+                if (regionEquals(buffer, pathStart, pathEnd, prefix)) {
+                    return pack(entry.route, 0);
+                }
+                continue;
+            }
+
+            // Padrão com parâmetro: prefixo, dígitos do id e sufixo
+            int idStart = pathStart + prefix.length;
+            if (idStart > pathEnd || !regionEquals(buffer, pathStart, idStart, prefix)) {
+                continue;
+            }
+            int id = 0;
+            int pos = idStart;
+            while (pos < pathEnd && pos - idStart < MAX_ID_DIGITS) {
+                int digit = buffer[pos] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                id = id * 10 + digit;
+                pos++;
+            }
+            if (pos > idStart && regionEquals(buffer, pos, pathEnd, entry.suffix)) {
+                return pack(entry.route, id);
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Resolve uma requisição a partir de Strings (usado pela engine do JDK)
+     * @param method método HTTP
+     * @param path caminho da requisição
+     * @return rota e id empacotados
+     */
+    public long match(String method, String path) {
+        // Método e caminho em um único buffer; ISO-8859-1 mantém um byte por caractere
+        byte[] buffer = (method + path).getBytes(StandardCharsets.ISO_8859_1);
+        return match(buffer, 0, method.length(), method.length(), buffer.length);
+    }
+
+    /**
+     * Extrai a rota de um resultado de match
+     * @param match resultado empacotado
+     * @return rota resolvida
+     */
+    public static Route route(long match) {
+        return Route.of((int) (match >>> 32));
+    }
+
+    /**
+     * Extrai o id do cliente de um resultado de match
+     * @param match resultado empacotado
+     * @return id do cliente (0 para rotas sem parâmetro)
+     */
+    public static int clientId(long match) {
+        return (int) match;
+    }
+
+    private static long pack(Route route, int id) {
+        return ((long) route.ordinal() << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    private static boolean regionEquals(byte[] buffer, int from, int to, byte[] expected) {
+        return Arrays.equals(buffer, from, to, expected, 0, expected.length);
+    }
+}
@@ -0,0 +1,103 @@
+package br.com.rinha.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latências sem lock com buckets logarítmicos
+ * Cada potência de 2 (em nanossegundos) é dividida em 8 sub-buckets, então os percentis
+ * têm erro relativo de no máximo 12,5%. Registrar um valor é um incremento atômico.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Retrato dos valores do histograma, em milissegundos
+     */
+    public record Snapshot(long count, double mean, double p50, double p90, double p99, double p999, double max) {
+    }
+
+    /**
+     * Registra uma duração
+     * @param nanos duração em nanossegundos
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(index(nanos));
+        count.increment();
+        sum.add(nanos);
+
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Calcula contagem, média, percentis e máximo a partir dos buckets
+     * @return retrato atual (os percentis usam o limite superior do bucket)
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return new Snapshot(0, 0, 0, 0, 0, 0, 0);
+        }
+        return new Snapshot(total,
+                toMillis(sum.sum() / total),
+                toMillis(percentile(counts, total, 0.50)),
+                toMillis(percentile(counts, total, 0.90)),
+                toMillis(percentile(counts, total, 0.99)),
+                toMillis(percentile(counts, total, 0.999)),
+                toMillis(max.get()));
+    }
+
+    private long percentile(long[] counts, long total, double quantile) {
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,124 @@
+package br.com.rinha.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registro de métricas da aplicação (histogramas, contadores e gauges)
+ * Registrar um valor não aloca nem trava; o texto só é montado quando /metrics é consultado.
+ */
+public final class Metrics {
+    private static final ConcurrentSkipListMap<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    private static final ConcurrentSkipListMap<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private static final ConcurrentSkipListMap<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    // Histograma por comando SQL; as chaves são as constantes SQL dos repositórios
+    private static final ConcurrentHashMap<String, LatencyHistogram> statementHistograms = new ConcurrentHashMap<>();
+
+    // Tempo esperando uma conexão do pool
+    public static final LatencyHistogram POOL_WAIT = histogram("db_pool_wait");
+
+    // Tempo entre obter e devolver a conexão
+    public static final LatencyHistogram CONNECTION_HOLD = histogram("db_connection_hold");
+
+    private Metrics() {
+    }
+
+    /**
+     * Obtém (ou cria) um histograma de latência
+     * @param name nome da métrica
+     * @return histograma registrado
+     */
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    /**
+     * Obtém (ou cria) o histograma de execução de um comando SQL
+     * @param sql texto do comando
+     * @return histograma do comando
+     */
+    public static LatencyHistogram statement(String sql) {
+        LatencyHistogram histogram = statementHistograms.get(sql);
+        if (histogram != null) {
+            return histogram;
+        }
+        return statementHistograms.computeIfAbsent(sql, k -> histogram("db_statement{sql=\"" + label(k) + "\"}"));
+    }
+
+    /**
+     * Obtém (ou cria) um contador
+     * @param name nome da métrica
+     * @return contador registrado
+     */
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    /**
+     * Registra um valor lido no momento da consulta
+     * @param name nome da métrica
+     * @param supplier fonte do valor
+     */
+    public static void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * Monta o retrato atual no formato texto do Prometheus (latências em milissegundos)
+     * @return texto com todas as métricas
+     */
+    public static String render() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            out.append(gauge.getKey()).append(' ').append(gauge.getValue().getAsLong()).append('\n');
+        }
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            out.append(counter.getKey()).append(' ').append(counter.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram.Snapshot snapshot = entry.getValue().snapshot();
+            String name = entry.getKey();
+            String base = name;
+            String labels = "";
+            int brace = name.indexOf('{');
+            if (brace >= 0) {
+                base = name.substring(0, brace);
+                labels = name.substring(brace + 1, name.length() - 1) + ",";
+            }
+            appendQuantile(out, base, labels, "0.5", snapshot.p50());
+            appendQuantile(out, base, labels, "0.9", snapshot.p90());
+            appendQuantile(out, base, labels, "0.99", snapshot.p99());
+            appendQuantile(out, base, labels, "0.999", snapshot.p999());
+            String suffixLabels = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+            out.append(base).append("_ms_max").append(suffixLabels).append(' ').append(format(snapshot.max())).append('\n');
+            out.append(base).append("_ms_mean").append(suffixLabels).append(' ').append(format(snapshot.mean())).append('\n');
+            out.append(base).append("_ms_count").append(suffixLabels).append(' ').append(snapshot.count()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void appendQuantile(StringBuilder out, String base, String labels, String quantile, double value) {
+        out.append(base).append("_ms{").append(labels).append("quantile=\"").append(quantile).append("\"} ")
+                .append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Resume o SQL em uma linha curta para usar como rótulo
+     */
+    private static String label(String sql) {
+        String normalized = sql.replaceAll("\\s+", " ").trim();
+        if (normalized.length() > 80) {
+            normalized = normalized.substring(0, 80) + "...";
+        }
+        return normalized.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
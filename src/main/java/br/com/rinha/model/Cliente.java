@@ -8,6 +8,7 @@ public class Cliente {
     private final String nome;
     private final int limite;
     private int saldo;
+    private int versao;
 
     public Cliente(int id, String nome, int limite, int saldo) {
         this.id = id;
@@ -16,6 +17,11 @@ public class Cliente {
         this.saldo = saldo;
     }
 
+    public Cliente(int id, String nome, int limite, int saldo, int versao) {
+        this(id, nome, limite, saldo);
+        this.versao = versao;
+    }
+
     public int getId() {
         return id;
     }
@@ -36,6 +42,29 @@ public class Cliente {
         this.saldo = saldo;
     }
 
+    /**
+     * Versão da linha do cliente no banco, incrementada a cada alteração de saldo
+     * @return versão conhecida por esta instância
+     */
+    public synchronized int getVersao() {
+        return versao;
+    }
+
+    /**
+     * Atualiza o saldo apenas se a versão for mais nova que a conhecida,
+     * para que uma notificação atrasada não volte o saldo para um valor antigo
+     * @param saldo novo saldo
+     * @param versao versão da linha no banco (negativa quando desconhecida: atualiza sempre)
+     */
+    public synchronized void atualizarSaldo(int saldo, int versao) {
+        if (versao < 0) {
+            this.saldo = saldo;
+        } else if (versao > this.versao) {
+            this.saldo = saldo;
+            this.versao = versao;
+        }
+    }
+
     /**
      * Verifica se uma operação de débito é válida com base no limite
      * @param valor valor a ser debitado
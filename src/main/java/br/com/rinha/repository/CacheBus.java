@@ -0,0 +1,167 @@
+package br.com.rinha.repository;
+
+import br.com.rinha.config.AppConfig;
+import br.com.rinha.config.DatabaseConfig;
+import br.com.rinha.metrics.Metrics;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Barramento de invalidação de cache entre as instâncias da API via LISTEN/NOTIFY do PostgreSQL
+ * O trigger tg_clientes_saldo (docker/db/init.sql) publica "id:saldo:versao" no canal clientes_saldo
+ * a cada alteração da versão do cliente. O NOTIFY só é entregue no commit e na ordem dos commits, então
+ * todas as instâncias (inclusive a que gravou) veem as alterações confirmadas na mesma ordem.
+ *
+ * Enquanto a conexão de escuta estiver fora, isHealthy() é false e os caches voltam a expirar
+ * por tempo; a cada (re)conexão os assinantes descartam tudo, pois notificações podem ter sido perdidas.
+ */
+public final class CacheBus {
+    static final String CHANNEL = "clientes_saldo";
+
+    // Espera máxima de cada leitura de notificações; também é o intervalo de verificação do encerramento
+    private static final int POLL_TIMEOUT_MS = 1000;
+    private static final long RECONNECT_DELAY_MS = 1000;
+
+    private static final CacheBus instance = new CacheBus();
+
+    /**
+     * Assinante das alterações de saldo
+     */
+    public interface Listener {
+        /**
+         * Saldo do cliente alterado e confirmado em alguma instância
+         * @param clienteId ID do cliente
+         * @param saldo novo saldo
+         * @param versao versão da linha do cliente após a alteração
+         */
+        void saldoAlterado(int clienteId, int saldo, int versao);
+
+        /**
+         * Notificações podem ter sido perdidas: descartar todas as entradas
+         */
+        void reset();
+    }
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final boolean enabled = AppConfig.cacheBus();
+    private final LongAdder received = Metrics.counter("cache_bus_notifications");
+    private final LongAdder reconnects = Metrics.counter("cache_bus_reconnects");
+    private volatile boolean healthy;
+    private volatile boolean running;
+
+    private CacheBus() {
+        Metrics.gauge("cache_bus_healthy", () -> healthy ? 1 : 0);
+    }
+
+    /**
+     * Obtém a instância do processo
+     * @return barramento de invalidação
+     */
+    public static CacheBus getInstance() {
+        return instance;
+    }
+
+    /**
+     * Registra um assinante das alterações de saldo
+     * @param listener assinante
+     */
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Indica se as notificações estão chegando, ou seja, se os caches podem ser mantidos sem expiração
+     * @return true se o barramento está habilitado e conectado
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * Inicia a thread de escuta (se CACHE_BUS estiver habilitado)
+     */
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(this::run, "cache-bus");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        while (running) {
+            try (Connection conn = DatabaseConfig.createDedicatedConnection()) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("LISTEN " + CHANNEL);
+                }
+                PGConnection pgConnection = conn.unwrap(PGConnection.class);
+
+                // O que mudou enquanto não estávamos escutando não será notificado
+                resetAll();
+                healthy = true;
+                System.out.println("Barramento de cache escutando o canal " + CHANNEL);
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        dispatch(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                System.err.println("Barramento de cache desconectado: " + e.getMessage());
+            }
+
+            if (healthy) {
+                healthy = false;
+                resetAll();
+            }
+            reconnects.increment();
+            try {
+                Thread.sleep(RECONNECT_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Interpreta "id:saldo:versao" e repassa aos assinantes
+     */
+    private void dispatch(String payload) {
+        int first = payload.indexOf(':');
+        int second = payload.indexOf(':', first + 1);
+        if (first < 0 || second < 0) {
+            System.err.println("Notificação de saldo inválida: " + payload);
+            return;
+        }
+        try {
+            int clienteId = Integer.parseInt(payload, 0, first, 10);
+            int saldo = Integer.parseInt(payload, first + 1, second, 10);
+            int versao = Integer.parseInt(payload, second + 1, payload.length(), 10);
+            received.increment();
+            for (Listener listener : listeners) {
+                listener.saldoAlterado(clienteId, saldo, versao);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Notificação de saldo inválida: " + payload);
+        }
+    }
+
+    private void resetAll() {
+        for (Listener listener : listeners) {
+            listener.reset();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package br.com.rinha.repository;
+
+import br.com.rinha.metrics.Metrics;
+import br.com.rinha.model.Transacao;
+import br.com.rinha.util.Deadline;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Ator de um cliente: caixa de mensagens com um único consumidor que aplica as transações em ordem
+ * As requisições só enfileiram e aguardam o resultado; nenhuma disputa lock. Quando há mensagens,
+ * uma virtual thread esvazia a caixa e aplica as transações pendentes em lotes de até maxBatch,
+ * cada lote em uma única ida ao banco. Cada requisição recebe o resultado da sua transação.
+ *
+ * No group commit (combine) não há consumidor próprio: a requisição que obtém o lock do cliente
+ * faz o papel do ator e aplica, em um único comando, a sua transação e todas as que chegaram enquanto
+ * a escrita anterior estava no banco. As demais esperam o lock e, ao obtê-lo, já encontram o resultado.
+ *
+ * Cada transação leva o prazo da sua requisição (o ScopedValue não passa para a virtual thread do ator).
+ * Um lote roda sob o prazo mais curto entre os seus, então termina ou falha antes de qualquer requisição
+ * dele desistir; transações cujo prazo já acabou são canceladas ao montar o lote, em vez de encurtá-lo.
+ * Uma transação ainda na caixa quando o prazo acaba é cancelada e não é aplicada.
+ */
+final class ClientActor {
+    private static final int QUEUED = 0;
+    private static final int TAKEN = 1;
+    private static final int CANCELLED = 2;
+
+    // Lotes aplicados, transações neles (a razão é o tamanho médio do lote) e canceladas antes do banco
+    private static final LongAdder batches = Metrics.counter("actor_batches");
+    private static final LongAdder batched = Metrics.counter("actor_batched_transactions");
+    private static final LongAdder cancelled = Metrics.counter("actor_cancelled");
+
+    private final int clientId;
+    private final int maxBatch;
+    private final BatchOperation operation;
+
+    private final ConcurrentLinkedQueue<Pending> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Aplicação de um lote de transações do cliente no banco
+     */
+    @FunctionalInterface
+    interface BatchOperation {
+        /**
+         * @param transacoes transações na ordem de chegada
+         * @return um resultado por transação: [saldo atual, limite, sucesso (1=sim, 0=não)]
+         * @throws SQLException em caso de erro no banco de dados (o lote inteiro falha)
+         */
+        int[][] apply(List<Transacao> transacoes) throws SQLException;
+    }
+
+    /**
+     * Transação aguardando na caixa
+     */
+    private static final class Pending {
+        final Transacao transacao;
+        final Deadline deadline = Deadline.current();
+        final CompletableFuture<int[]> result = new CompletableFuture<>();
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        Pending(Transacao transacao) {
+            this.transacao = transacao;
+        }
+    }
+
+    /**
+     * @param clientId ID do cliente
+     * @param maxBatch máximo de transações por ida ao banco
+     * @param operation aplicação de um lote
+     */
+    ClientActor(int clientId, int maxBatch, BatchOperation operation) {
+        this.clientId = clientId;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.operation = operation;
+    }
+
+    /**
+     * Enfileira a transação e aguarda o resultado
+     * @param transacao transação do cliente deste ator
+     * @return array com [saldo atual, limite, sucesso (1=sim, 0=não)]
+     * @throws SQLException erro do lote, ou SQLTimeoutException se o prazo da requisição acabou
+     */
+    int[] submit(Transacao transacao) throws SQLException {
+        Pending pending = new Pending(transacao);
+        mailbox.offer(pending);
+        if (scheduled.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("cliente-ator-" + clientId).start(this::drain);
+        }
+        return await(pending);
+    }
+
+    /**
+     * Group commit: enfileira a transação e, se ninguém a aplicou ainda, obtém o lock do cliente e
+     * aplica em lotes tudo o que está na caixa até incluir a sua própria transação
+     * @param transacao transação do cliente deste ator
+     * @param locks tabela de locks por cliente
+     * @param lockDeadlineNanos limite para obter o lock, na escala de System.nanoTime()
+     * @return array com [saldo atual, limite, sucesso (1=sim, 0=não)]
+     * @throws SQLException erro do lote, ou SQLTimeoutException se o lock ou o resultado não vieram a tempo
+     */
+    int[] combine(Transacao transacao, ClientLockTable locks, long lockDeadlineNanos) throws SQLException {
+        Pending pending = new Pending(transacao);
+        mailbox.offer(pending);
+
+        Lock lock;
+        try {
+            lock = locks.acquire(clientId, lockDeadlineNanos);
+        } catch (SQLTimeoutException e) {
+            if (cancel(pending)) {
+                throw e;
+            }
+            // Outro combinador já a levou: o resultado sai quando ele terminar, dentro do prazo
+            return await(pending);
+        }
+        try {
+            // Lotes só são aplicados sob o lock, então com ele em mãos uma transação já levada está pronta
+            while (!pending.result.isDone()) {
+                List<Pending> batch = new ArrayList<>(maxBatch);
+                Pending next;
+                while (batch.size() < maxBatch && (next = mailbox.poll()) != null) {
+                    if (take(next)) {
+                        batch.add(next);
+                    }
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                apply(batch);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return await(pending);
+    }
+
+    /**
+     * Tira a transação da caixa para um lote; se o prazo dela já acabou, cancela em vez de levá-la
+     * @return true se a transação entra no lote
+     */
+    private boolean take(Pending pending) {
+        if (pending.deadline != null && pending.deadline.isExpired()) {
+            if (cancel(pending)) {
+                pending.result.completeExceptionally(Deadline.expired("transação na fila do cliente " + clientId));
+            }
+            return false;
+        }
+        return pending.state.compareAndSet(QUEUED, TAKEN);
+    }
+
+    /**
+     * Cancela a transação se ela ainda está na caixa
+     * @return false se um lote já a levou (o resultado precisa ser aguardado)
+     */
+    private static boolean cancel(Pending pending) {
+        if (pending.state.compareAndSet(QUEUED, CANCELLED)) {
+            cancelled.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Aguarda o resultado até o prazo da requisição; sem prazo, até o fim do lote
+     */
+    private int[] await(Pending pending) throws SQLException {
+        long remaining = Deadline.remainingNanos();
+        try {
+            return remaining == Long.MAX_VALUE
+                    ? pending.result.get()
+                    : pending.result.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (cancel(pending)) {
+                throw Deadline.expired("transação na fila do cliente " + clientId);
+            }
+            // Já está em um lote que passou do prazo desta requisição (o lote roda sob o prazo mais curto
+            // dos seus, com timeout do comando arredondado para segundos)
+            throw Deadline.expired("lote do cliente " + clientId);
+        } catch (InterruptedException | ExecutionException e) {
+            return unwrap(e);
+        }
+    }
+
+    private int[] unwrap(Exception failure) throws SQLException {
+        if (failure instanceof InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrompido aguardando o ator do cliente " + clientId, e);
+        }
+        Throwable cause = failure.getCause();
+        if (cause instanceof SQLException sqlException) {
+            throw sqlException;
+        }
+        throw new SQLException("Falha no ator do cliente " + clientId, cause);
+    }
+
+    /**
+     * Esvazia a caixa em lotes; só uma execução por vez (garantido por scheduled)
+     */
+    private void drain() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        do {
+            Pending pending;
+            while ((pending = mailbox.poll()) != null) {
+                if (!take(pending)) {
+                    continue;
+                }
+                batch.add(pending);
+                if (batch.size() == maxBatch) {
+                    apply(batch);
+                }
+            }
+            if (!batch.isEmpty()) {
+                apply(batch);
+            }
+            scheduled.set(false);
+            // Uma mensagem pode ter chegado depois do último poll e antes de liberar scheduled
+        } while (!mailbox.isEmpty() && scheduled.compareAndSet(false, true));
+    }
+
+    /**
+     * Aplica o lote sob o prazo mais curto entre as suas transações
+     */
+    private void apply(List<Pending> batch) {
+        List<Transacao> transacoes = new ArrayList<>(batch.size());
+        Deadline deadline = null;
+        for (Pending pending : batch) {
+            transacoes.add(pending.transacao);
+            deadline = Deadline.earliest(deadline, pending.deadline);
+        }
+        batches.increment();
+        batched.add(batch.size());
+
+        try {
+            int[][] results = Deadline.callWithin(deadline, () -> operation.apply(transacoes));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(results[i]);
+            }
+        } catch (Throwable t) {
+            for (Pending pending : batch) {
+                pending.result.completeExceptionally(t);
+            }
+        }
+        batch.clear();
+    }
+}
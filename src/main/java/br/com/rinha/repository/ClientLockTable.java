@@ -0,0 +1,73 @@
+package br.com.rinha.repository;
+
+import br.com.rinha.metrics.LatencyHistogram;
+import br.com.rinha.metrics.Metrics;
+
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tabela fixa de locks por faixa (striped) indexada pelo ID do cliente
+ * O número de locks não depende de quantos IDs diferentes chegam e nenhum lock é alocado por chamada.
+ * ReentrantLock estaciona a virtual thread sem prender a carrier (ao contrário de synchronized),
+ * e a espera é limitada por um prazo: quem não consegue o lock a tempo recebe SQLTimeoutException.
+ */
+final class ClientLockTable {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    // Aquisições que encontraram o lock ocupado, esperas que estouraram o prazo e tempo de espera
+    private final LongAdder contended = Metrics.counter("client_lock_contended");
+    private final LongAdder timeouts = Metrics.counter("client_lock_timeouts");
+    private final LatencyHistogram waitTime = Metrics.histogram("client_lock_wait");
+
+    /**
+     * @param minStripes quantidade mínima de locks; é arredondada para a próxima potência de 2
+     */
+    ClientLockTable(int minStripes) {
+        int size = Integer.highestOneBit(Math.max(2, minStripes) - 1) << 1;
+        this.stripes = new ReentrantLock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Obtém o lock do cliente, esperando no máximo até o prazo
+     * @param clientId ID do cliente
+     * @param deadlineNanos instante limite, na escala de System.nanoTime()
+     * @return lock adquirido, a ser liberado pelo chamador
+     * @throws SQLTimeoutException se o prazo acabar (ou a thread for interrompida) antes de obter o lock
+     */
+    ReentrantLock acquire(int clientId, long deadlineNanos) throws SQLTimeoutException {
+        ReentrantLock lock = stripes[index(clientId)];
+        if (lock.tryLock()) {
+            return lock;
+        }
+
+        contended.increment();
+        long start = System.nanoTime();
+        try {
+            if (lock.tryLock(Math.max(0, deadlineNanos - start), TimeUnit.NANOSECONDS)) {
+                waitTime.record(System.nanoTime() - start);
+                return lock;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        waitTime.record(System.nanoTime() - start);
+        timeouts.increment();
+        throw new SQLTimeoutException("Lock timeout para o cliente " + clientId);
+    }
+
+    /**
+     * Espalha IDs consecutivos entre as faixas
+     */
+    private int index(int clientId) {
+        int h = clientId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,312 @@
+package br.com.rinha.repository;
+
+import br.com.rinha.cache.WTinyLfuCache;
+import br.com.rinha.metrics.Metrics;
+import br.com.rinha.model.Cliente;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Estado por cliente indexado pelo ID como int, sem boxing nem ConcurrentHashMap no caminho quente
+ * Guarda o cliente em cache (limite, saldo e versão), o contador de requisições, a marca de
+ * cliente inexistente e, no modo WRITE_MODE=actor, o ator que serializa as escritas do cliente.
+ *
+ * IDs de 0 até denseSize - 1 ficam em arrays densos (o próprio ID é o índice). Os demais clientes
+ * existentes ficam em uma tabela de endereçamento aberto; como só entram nela clientes que existem
+ * no banco, IDs aleatórios não a fazem crescer. IDs inexistentes fora da faixa densa vão para o
+ * cache negativo limitado (WTinyLfuCache).
+ *
+ * Leituras não travam; inclusões na tabela esparsa são serializadas por um ReentrantLock
+ * (synchronized prenderia a carrier da virtual thread).
+ */
+final class ClientStateTable {
+    // Chave livre na tabela esparsa (esse ID nunca é armazenado)
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private final int denseSize;
+    private final long missingTtlNanos;
+
+    // Faixa densa: cliente, requisições, prazo da marca de inexistente (0 = sem marca) e ator
+    private final AtomicReferenceArray<Cliente> denseClientes;
+    private final AtomicReferenceArray<ClientActor> denseActors;
+    private final AtomicLongArray denseRequests;
+    private final AtomicLongArray denseMissingUntil;
+
+    // Demais IDs: clientes existentes em endereçamento aberto, inexistentes no cache negativo
+    private volatile SparseTable sparse = new SparseTable(16);
+    private final WTinyLfuCache<Integer, Boolean> missingSparse;
+    private final ReentrantLock sparseLock = new ReentrantLock();
+
+    /**
+     * Tabela de endereçamento aberto (sondagem linear); substituída inteira ao crescer
+     * As chaves nunca são removidas, então uma posição ocupada continua sendo daquele ID.
+     */
+    private static final class SparseTable {
+        final AtomicIntegerArray keys;
+        final AtomicReferenceArray<Cliente> clientes;
+        final AtomicLongArray requests;
+        final AtomicReferenceArray<ClientActor> actors;
+        final int mask;
+        int size;
+
+        SparseTable(int capacity) {
+            this.keys = new AtomicIntegerArray(capacity);
+            this.clientes = new AtomicReferenceArray<>(capacity);
+            this.requests = new AtomicLongArray(capacity);
+            this.actors = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                keys.set(i, EMPTY);
+            }
+        }
+
+        /**
+         * Posição do ID, ou -1 se ele não está na tabela
+         */
+        int indexOf(int id) {
+            int i = spread(id) & mask;
+            while (true) {
+                int key = keys.get(i);
+                if (key == id) {
+                    return i;
+                }
+                if (key == EMPTY) {
+                    return -1;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+    }
+
+    /**
+     * @param denseSize quantidade de IDs (a partir de 0) guardados em arrays densos
+     * @param missingSize máximo de IDs inexistentes lembrados fora da faixa densa
+     * @param missingTtlMs validade da marca de cliente inexistente
+     */
+    ClientStateTable(int denseSize, int missingSize, long missingTtlMs) {
+        this.denseSize = Math.max(0, denseSize);
+        this.missingTtlNanos = TimeUnit.MILLISECONDS.toNanos(missingTtlMs);
+        this.denseClientes = new AtomicReferenceArray<>(this.denseSize);
+        this.denseActors = new AtomicReferenceArray<>(this.denseSize);
+        this.denseRequests = new AtomicLongArray(this.denseSize);
+        this.denseMissingUntil = new AtomicLongArray(this.denseSize);
+        this.missingSparse = new WTinyLfuCache<>("clientes_inexistentes", missingSize, missingTtlMs);
+    }
+
+    /**
+     * Obtém o cliente em cache
+     * @param id ID do cliente
+     * @return cliente, ou null se não está em cache
+     */
+    Cliente get(int id) {
+        if (isDense(id)) {
+            return denseClientes.get(id);
+        }
+        SparseTable table = sparse;
+        int index = table.indexOf(id);
+        return index < 0 ? null : table.clientes.get(index);
+    }
+
+    /**
+     * Guarda o cliente em cache, substituindo o anterior do mesmo ID
+     * @param cliente cliente lido do banco
+     */
+    void put(Cliente cliente) {
+        int id = cliente.getId();
+        if (isDense(id)) {
+            denseMissingUntil.set(id, 0);
+            if (denseClientes.getAndSet(id, cliente) == null) {
+                registerGauge(id);
+            }
+            return;
+        }
+        if (id == EMPTY) {
+            return;
+        }
+        missingSparse.remove(id);
+        sparseLock.lock();
+        try {
+            SparseTable table = sparse;
+            int index = table.indexOf(id);
+            if (index >= 0) {
+                table.clientes.set(index, cliente);
+                return;
+            }
+            // Mantém a ocupação abaixo de 50% para sondagens curtas
+            if ((table.size + 1) * 2 > table.mask + 1) {
+                table = grow(table);
+            }
+            insert(table, id, cliente, 0);
+            registerGauge(id);
+        } finally {
+            sparseLock.unlock();
+        }
+    }
+
+    /**
+     * Verifica se o ID foi marcado como inexistente e a marca ainda vale
+     * @param id ID do cliente
+     * @return true se o cliente é sabidamente inexistente
+     */
+    boolean isMissing(int id) {
+        if (isDense(id)) {
+            long until = denseMissingUntil.get(id);
+            return until != 0 && System.nanoTime() - until < 0;
+        }
+        return missingSparse.contains(id);
+    }
+
+    /**
+     * Marca o ID como inexistente durante a validade configurada
+     * @param id ID do cliente
+     */
+    void markMissing(int id) {
+        if (isDense(id)) {
+            // nanoTime pode ser 0; o prazo nunca fica 0 para não se confundir com "sem marca"
+            denseMissingUntil.set(id, (System.nanoTime() + missingTtlNanos) | 1);
+            return;
+        }
+        missingSparse.put(id, Boolean.TRUE);
+    }
+
+    /**
+     * Conta uma requisição do cliente (fora da faixa densa, só de clientes já em cache)
+     * @param id ID do cliente
+     */
+    void recordRequest(int id) {
+        if (isDense(id)) {
+            denseRequests.incrementAndGet(id);
+            return;
+        }
+        SparseTable table = sparse;
+        int index = table.indexOf(id);
+        if (index >= 0) {
+            // Um incremento feito durante o crescimento da tabela pode se perder
+            table.requests.incrementAndGet(index);
+        }
+    }
+
+    /**
+     * Quantidade de requisições contadas para o cliente
+     * @param id ID do cliente
+     * @return total desde o início do processo
+     */
+    long requestCount(int id) {
+        if (isDense(id)) {
+            return denseRequests.get(id);
+        }
+        SparseTable table = sparse;
+        int index = table.indexOf(id);
+        return index < 0 ? 0 : table.requests.get(index);
+    }
+
+    /**
+     * Obtém o ator do cliente, criando-o no primeiro uso; nunca há dois atores para o mesmo ID
+     * @param id ID do cliente
+     * @param factory criação do ator
+     * @return ator do cliente, ou null se o cliente (fora da faixa densa) ainda não está na tabela
+     */
+    ClientActor actor(int id, IntFunction<ClientActor> factory) {
+        if (isDense(id)) {
+            ClientActor actor = denseActors.get(id);
+            if (actor == null && !denseActors.compareAndSet(id, null, actor = factory.apply(id))) {
+                actor = denseActors.get(id);
+            }
+            return actor;
+        }
+
+        SparseTable table = sparse;
+        int index = table.indexOf(id);
+        ClientActor actor = index < 0 ? null : table.actors.get(index);
+        if (actor != null) {
+            return actor;
+        }
+        // Criação sob o lock: um crescimento simultâneo da tabela não pode perder o ator
+        sparseLock.lock();
+        try {
+            table = sparse;
+            index = table.indexOf(id);
+            if (index < 0) {
+                return null;
+            }
+            actor = table.actors.get(index);
+            if (actor == null) {
+                actor = factory.apply(id);
+                table.actors.set(index, actor);
+            }
+            return actor;
+        } finally {
+            sparseLock.unlock();
+        }
+    }
+
+    /**
+     * Descarta os clientes em cache (contadores, marcas de inexistente e atores são mantidos)
+     */
+    void clear() {
+        for (int i = 0; i < denseSize; i++) {
+            denseClientes.set(i, null);
+        }
+        sparseLock.lock();
+        try {
+            SparseTable table = sparse;
+            for (int i = 0; i <= table.mask; i++) {
+                table.clientes.set(i, null);
+            }
+        } finally {
+            sparseLock.unlock();
+        }
+    }
+
+    private boolean isDense(int id) {
+        return id >= 0 && id < denseSize;
+    }
+
+    /**
+     * Copia a tabela para uma com o dobro da capacidade e a publica (lock adquirido)
+     */
+    private SparseTable grow(SparseTable table) {
+        SparseTable grown = new SparseTable((table.mask + 1) * 2);
+        for (int i = 0; i <= table.mask; i++) {
+            int key = table.keys.get(i);
+            if (key != EMPTY) {
+                insert(grown, key, table.clientes.get(i), table.requests.get(i));
+                grown.actors.set(grown.indexOf(key), table.actors.get(i));
+            }
+        }
+        sparse = grown;
+        return grown;
+    }
+
+    /**
+     * Inclui um ID ausente (lock adquirido); a chave é publicada por último,
+     * então quem a encontra já vê o cliente e o contador
+     */
+    private static void insert(SparseTable table, int id, Cliente cliente, long requests) {
+        int i = spread(id) & table.mask;
+        while (table.keys.get(i) != EMPTY) {
+            i = (i + 1) & table.mask;
+        }
+        table.clientes.set(i, cliente);
+        table.requests.set(i, requests);
+        table.keys.set(i, id);
+        table.size++;
+    }
+
+    private void registerGauge(int id) {
+        Metrics.gauge("cliente_requisicoes{cliente=\"" + id + "\"}", () -> requestCount(id));
+    }
+
+    /**
+     * Espalha IDs consecutivos pela tabela
+     */
+    private static int spread(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,41 +1,118 @@
 package br.com.rinha.repository;
 
+import br.com.rinha.cache.SingleFlight;
+import br.com.rinha.config.AppConfig;
 import br.com.rinha.config.DatabaseConfig;
+import br.com.rinha.metrics.Metrics;
 import br.com.rinha.model.Cliente;
+import br.com.rinha.model.Transacao;
+import br.com.rinha.util.Deadline;
 
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Repositório para operações relacionadas a clientes no banco de dados
  * Otimizado para alta concorrência
  */
 public class ClienteRepository {
-    private static final String SQL_CHECK_CLIENT = "SELECT 1 FROM clientes WHERE id = ?";
-    private static final String SQL_GET_CLIENT = "SELECT id, nome, limite, saldo FROM clientes WHERE id = ?";
-    private static final String SQL_UPDATE_BALANCE = "UPDATE clientes SET saldo = ? WHERE id = ?";
+    private static final String SQL_GET_CLIENT = "SELECT id, nome, limite, saldo, versao FROM clientes WHERE id = ?";
+    private static final String SQL_UPDATE_BALANCE =
+            "UPDATE clientes SET saldo = ?, versao = versao + 1 WHERE id = ? RETURNING versao";
 
-    // Cache para reduzir consultas ao banco de dados
-    private static final ConcurrentHashMap<Integer, Cliente> clienteCache = new ConcurrentHashMap<>();
+    // Aplica crédito ou débito validando o limite no WHERE; se o débito estourar o limite nenhuma linha
+    // é atualizada (versao fica igual) e o segundo ramo devolve o saldo atual com success = 0
+    // Toda escrita do saldo incrementa versao, para que o modo otimista e os caches percebam a alteração
+    private static final String SQL_ATOMIC_UPDATE =
+            "WITH atualizado AS (" +
+            "  UPDATE clientes SET saldo = saldo + ?, versao = versao + 1 " +
+            "  WHERE id = ? AND saldo + ? >= -limite " +
+            "  RETURNING saldo, limite, versao" +
+            ") " +
+            "SELECT saldo, limite, versao, 1 AS success FROM atualizado " +
+            "UNION ALL " +
+            "SELECT saldo, limite, versao, 0 AS success FROM clientes " +
+            "WHERE id = ? AND NOT EXISTS (SELECT 1 FROM atualizado)";
 
-    // Locks por cliente para evitar race conditions
-    private static final ConcurrentHashMap<Integer, Lock> clientLocks = new ConcurrentHashMap<>();
+    // Modo ADVISORY: serializa o cliente entre todas as instâncias até o fim da transação
+    private static final String SQL_ADVISORY_LOCK = "SELECT pg_advisory_xact_lock(?)";
 
-    /**
-     * Obtém lock para operações em um cliente específico
-     * @param clientId ID do cliente
-     * @return Lock para o cliente
-     */
-    private Lock getClientLock(int clientId) {
-        clientLocks.putIfAbsent(clientId, new ReentrantLock());
-        return clientLocks.get(clientId);
+    // Modo OPTIMISTIC: lê a versão sem travar e grava só se ninguém alterou o saldo nesse meio tempo
+    private static final String SQL_GET_VERSIONED = "SELECT saldo, limite, versao FROM clientes WHERE id = ?";
+    private static final String SQL_COMPARE_AND_SET =
+            "UPDATE clientes SET saldo = ?, versao = versao + 1 WHERE id = ? AND versao = ?";
+
+    // Procedure definida em docker/db/init.sql: trava o cliente, valida, atualiza o saldo e grava o histórico
+    private static final String SQL_CALL_PROCEDURE =
+            "CALL pr_processar_transacao(?, ?, ?, ?, NULL::integer, NULL::integer, NULL::boolean, ?, NULL::integer)";
+
+    // Atualiza o saldo e grava o histórico no mesmo comando; se o débito estourar o limite
+    // nenhuma linha é atualizada e o segundo ramo devolve o saldo atual com sucesso = 0
+    private static final String SQL_UPDATE_WITH_HISTORY =
+            "WITH atualizado AS (" +
+            "  UPDATE clientes SET saldo = saldo + ?, versao = versao + 1 " +
+            "  WHERE id = ? AND saldo + ? >= -limite " +
+            "  RETURNING saldo, limite, versao" +
+            "), inserido AS (" +
+            "  INSERT INTO transacoes (cliente_id, valor, tipo, descricao, realizada_em) " +
+            "  SELECT ?, ?, ?, ?, ? FROM atualizado" +
+            ") " +
+            "SELECT saldo, limite, versao, 1 AS success FROM atualizado " +
+            "UNION ALL " +
+            "SELECT saldo, limite, versao, 0 AS success FROM clientes " +
+            "WHERE id = ? AND NOT EXISTS (SELECT 1 FROM atualizado)";
+
+    // Modo ator: aplica em ordem um lote de transações de um cliente (função definida em docker/db/init.sql)
+    private static final String SQL_PROCESS_BATCH =
+            "SELECT ordem, novo_saldo, limite_cliente, sucesso, nova_versao FROM fn_processar_lote(?, ?, ?, ?, ?)";
+
+    // Estado por cliente (cache, contador de requisições e clientes inexistentes) indexado pelo ID;
+    // o cache de clientes é mantido coerente entre instâncias pelo CacheBus
+    private static final ClientStateTable clientStates = new ClientStateTable(
+            AppConfig.clientTableDenseSize(), AppConfig.negativeCacheSize(), AppConfig.negativeCacheTtlMs());
+
+    static {
+        CacheBus.getInstance().subscribe(new CacheBus.Listener() {
+            @Override
+            public void saldoAlterado(int clienteId, int saldo, int versao) {
+                updateCachedBalance(clienteId, saldo, versao);
+            }
+
+            @Override
+            public void reset() {
+                clientStates.clear();
+            }
+        });
     }
 
+    // Consultas de existência em andamento por cliente, compartilhadas entre requisições simultâneas
+    private static final SingleFlight<Integer, Boolean> existsLoads = new SingleFlight<>("cliente_existe");
+
+    // Locks por faixa de cliente para evitar race conditions, com espera limitada
+    private static final ClientLockTable clientLocks = new ClientLockTable(AppConfig.lockStripes());
+
+    // Prazo total de uma operação para obter o lock do cliente, somando as tentativas
+    private static final long LOCK_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(AppConfig.lockTimeoutMs());
+
+    // Controle de concorrência entre instâncias usado por atomicUpdate
+    private static final AppConfig.ConcurrencyMode concurrencyMode = AppConfig.concurrencyMode();
+
+    // Transações de um cliente por ida ao banco no modo ator
+    private static final int ACTOR_MAX_BATCH = AppConfig.actorMaxBatch();
+
+    // Tentativas repetidas e conflitos (SQLState 40xxx ou versão alterada), rotulados pelo modo
+    private static final String MODE_LABEL = "{modo=\"" + concurrencyMode.name().toLowerCase(Locale.ROOT) + "\"}";
+    private static final LongAdder retries = Metrics.counter("atomic_update_retries" + MODE_LABEL);
+    private static final LongAdder conflicts = Metrics.counter("atomic_update_conflicts" + MODE_LABEL);
+
     /**
      * Verifica se um cliente existe
      * @param clientId ID do cliente
@@ -43,19 +120,42 @@ public class ClienteRepository {
      * @throws SQLException em caso de erro no banco de dados
      */
     public boolean clientExists(int clientId) throws SQLException {
-        // Primeiro verifica no cache
-        if (clienteCache.containsKey(clientId)) {
+        // Primeiro verifica nos caches
+        if (clientStates.get(clientId) != null) {
             return true;
         }
-
-        // Se não estiver no cache, consulta o banco
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(SQL_CHECK_CLIENT)) {
-            stmt.setInt(1, clientId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next();
-            }
+        if (clientStates.isMissing(clientId)) {
+            return false;
         }
+
+        // Se não estiver no cache, carrega do banco (uma consulta por cliente, mesmo com várias requisições);
+        // o cliente carregado fica em cache, então as próximas requisições não voltam ao banco
+        return existsLoads.execute(clientId, () -> loadCliente(clientId) != null);
+    }
+
+    /**
+     * Verifica no cache negativo se o cliente já foi consultado e não existe, sem ir ao banco
+     * @param clientId ID do cliente
+     * @return true se o cliente é sabidamente inexistente
+     */
+    public boolean isKnownMissing(int clientId) {
+        return clientStates.isMissing(clientId);
+    }
+
+    /**
+     * Registra no cache negativo um cliente que não existe (ex.: extrato JSON vazio)
+     * @param clientId ID do cliente
+     */
+    public void markMissing(int clientId) {
+        clientStates.markMissing(clientId);
+    }
+
+    /**
+     * Conta uma requisição do cliente (exportado em /metrics como cliente_requisicoes)
+     * @param clientId ID do cliente
+     */
+    public void recordRequest(int clientId) {
+        clientStates.recordRequest(clientId);
     }
 
     /**
@@ -66,14 +166,24 @@ public class ClienteRepository {
      */
     public Cliente findById(int clientId) throws SQLException {
         // Tenta obter do cache primeiro
-        Cliente cachedCliente = clienteCache.get(clientId);
+        Cliente cachedCliente = clientStates.get(clientId);
         if (cachedCliente != null) {
             return cachedCliente;
         }
+        if (clientStates.isMissing(clientId)) {
+            return null;
+        }
 
         // Se não estiver no cache, consulta o banco
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(SQL_GET_CLIENT)) {
+        return loadCliente(clientId);
+    }
+
+    /**
+     * Lê o cliente do banco e o guarda no cache, ou registra no cache negativo se não existir
+     */
+    private Cliente loadCliente(int clientId) throws SQLException {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            PreparedStatement stmt = StatementRegistry.prepare(conn, SQL_GET_CLIENT);
             stmt.setInt(1, clientId);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -81,12 +191,14 @@ public class ClienteRepository {
                             rs.getInt("id"),
                             rs.getString("nome"),
                             rs.getInt("limite"),
-                            rs.getInt("saldo")
+                            rs.getInt("saldo"),
+                            rs.getInt("versao")
                     );
                     // Armazena no cache
-                    clienteCache.put(clientId, cliente);
+                    clientStates.put(cliente);
                     return cliente;
                 }
+                clientStates.markMissing(clientId);
                 return null;
             }
         }
@@ -99,20 +211,20 @@ public class ClienteRepository {
      * @throws SQLException em caso de erro no banco de dados
      */
     public void updateBalance(int clientId, int newBalance) throws SQLException {
-        Lock lock = getClientLock(clientId);
-        lock.lock();
+        Lock lock = clientLocks.acquire(clientId, Deadline.limitNanos(LOCK_TIMEOUT_NANOS));
         try {
-            try (Connection conn = DatabaseConfig.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(SQL_UPDATE_BALANCE)) {
+            try (Connection conn = DatabaseConfig.getConnection()) {
+                PreparedStatement stmt = StatementRegistry.prepare(conn, SQL_UPDATE_BALANCE);
                 stmt.setInt(1, newBalance);
                 stmt.setInt(2, clientId);
-                stmt.executeUpdate();
+                int versao;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    versao = rs.next() ? rs.getInt(1) : -1;
+                }
+                conn.commit();
 
                 // Atualiza o cache se o cliente estiver nele
-                Cliente cachedCliente = clienteCache.get(clientId);
-                if (cachedCliente != null) {
-                    cachedCliente.setSaldo(newBalance);
-                }
+                updateCachedBalance(clientId, newBalance, versao);
             }
         } finally {
             lock.unlock();
@@ -129,88 +241,265 @@ public class ClienteRepository {
      * @throws SQLException em caso de erro no banco de dados
      */
     public int[] atomicUpdate(int clientId, String tipo, int valor) throws SQLException {
-        // Tentativas máximas com backoff exponencial
-        int maxRetries = 3;
+        return switch (concurrencyMode) {
+            case ROW -> withRetry(clientId, () -> atomicUpdateInternal(clientId, tipo, valor, false));
+            case ADVISORY -> withRetry(clientId, () -> atomicUpdateInternal(clientId, tipo, valor, true));
+            case OPTIMISTIC -> withRetry(clientId, () -> optimisticUpdate(clientId, tipo, valor));
+        };
+    }
+
+    /**
+     * Realiza a transação e grava o histórico em uma única chamada à procedure pr_processar_transacao
+     * @param transacao transação a ser aplicada
+     * @return array com [saldo atual, limite, sucesso (1=sim, 0=não)]
+     * @throws SQLException em caso de erro no banco de dados
+     */
+    public int[] atomicUpdateWithProcedure(Transacao transacao) throws SQLException {
+        return withRetry(transacao.getClienteId(), () -> callProcedure(transacao));
+    }
+
+    /**
+     * Realiza a transação e grava o histórico em um único comando (UPDATE + INSERT via CTE)
+     * @param transacao transação a ser aplicada
+     * @return array com [saldo atual, limite, sucesso (1=sim, 0=não)]
+     * @throws SQLException em caso de erro no banco de dados
+     */
+    public int[] atomicUpdateWithCte(Transacao transacao) throws SQLException {
+        return withRetry(transacao.getClienteId(), () -> updateWithHistory(transacao));
+    }
+
+    /**
+     * Entrega a transação ao ator do cliente, que a aplica em ordem com as demais pendentes
+     * (saldo e histórico em uma ida ao banco por lote, sem o lock do cliente)
+     * @param transacao transação a ser aplicada
+     * @return array com [saldo atual, limite, sucesso (1=sim, 0=não)]
+     * @throws SQLException em caso de erro no banco de dados ou se o prazo acabar com a transação na fila
+     */
+    public int[] atomicUpdateWithActor(Transacao transacao) throws SQLException {
+        return actorOf(transacao.getClienteId()).submit(transacao);
+    }
+
+    /**
+     * Group commit: a transação entra na caixa do cliente e quem obtém o lock do cliente aplica de uma vez
+     * todas as pendentes (as que chegaram enquanto a escrita anterior estava no banco), em um único comando
+     * que avalia cada crédito ou débito em ordem contra o limite
+     * @param transacao transação a ser aplicada
+     * @return array com [saldo atual, limite, sucesso (1=sim, 0=não)]
+     * @throws SQLException em caso de erro no banco de dados ou se o lock não vier dentro do prazo
+     */
+    public int[] atomicUpdateWithGroupCommit(Transacao transacao) throws SQLException {
+        return actorOf(transacao.getClienteId())
+                .combine(transacao, clientLocks, Deadline.limitNanos(LOCK_TIMEOUT_NANOS));
+    }
+
+    /**
+     * Obtém a caixa de mensagens (ator) do cliente, que fica na tabela de estado por cliente
+     */
+    private ClientActor actorOf(int clientId) throws SQLException {
+        // Garante o cliente na tabela de estado, onde fica o ator
+        ClientActor actor = findById(clientId) == null ? null : clientStates.actor(clientId,
+                id -> new ClientActor(id, ACTOR_MAX_BATCH, transacoes -> applyBatch(id, transacoes)));
+        if (actor == null) {
+            throw new SQLException("Cliente " + clientId + " não encontrado");
+        }
+        return actor;
+    }
+
+    /**
+     * Operação de escrita que pode ser repetida em caso de conflito
+     */
+    @FunctionalInterface
+    private interface AtomicOperation {
+        int[] execute() throws SQLException;
+    }
+
+    /**
+     * Executa a operação sob o lock do cliente com retry e backoff exponencial
+     * O lock é liberado durante a espera entre tentativas, para não travar as outras requisições do cliente.
+     * Lock e esperas respeitam o prazo da requisição: uma nova tentativa que não cabe nele é abandonada.
+     */
+    private int[] withRetry(int clientId, AtomicOperation operation) throws SQLException {
+        // Tentativas máximas com backoff exponencial; no modo otimista um conflito é esperado e barato
+        int maxRetries = concurrencyMode == AppConfig.ConcurrencyMode.OPTIMISTIC ? 8 : 3;
         int retryCount = 0;
         int baseWaitTimeMs = 10;
+        long deadline = Deadline.limitNanos(LOCK_TIMEOUT_NANOS);
 
-        Lock lock = getClientLock(clientId);
-        lock.lock();
-        try {
-            while (retryCount < maxRetries) {
-                try {
-                    return atomicUpdateInternal(clientId, tipo, valor);
-                } catch (SQLException e) {
-                    // Verifica se é um erro de concorrência/lock
-                    if (e.getSQLState() != null &&
-                            (e.getSQLState().startsWith("40") || e.getSQLState().startsWith("23"))) {
-                        retryCount++;
-                        // Se atingiu o máximo de tentativas, propaga o erro
-                        if (retryCount >= maxRetries) {
-                            throw e;
-                        }
-
-                        // Espera exponencial
-                        try {
-                            Thread.sleep(baseWaitTimeMs * (1 << retryCount));
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            throw e;
-                        }
-                    } else {
-                        // Se não for erro de concorrência, propaga imediatamente
-                        throw e;
-                    }
+        while (true) {
+            Lock lock = clientLocks.acquire(clientId, deadline);
+            try {
+                return operation.execute();
+            } catch (SQLException e) {
+                // Verifica se é um erro de concorrência/lock
+                if (e.getSQLState() == null ||
+                        !(e.getSQLState().startsWith("40") || e.getSQLState().startsWith("23"))) {
+                    // Se não for erro de concorrência, propaga imediatamente
+                    throw e;
+                }
+                if (e.getSQLState().startsWith("40")) {
+                    conflicts.increment();
+                }
+                retryCount++;
+                // Se atingiu o máximo de tentativas, propaga o erro
+                if (retryCount >= maxRetries) {
+                    throw e;
                 }
+            } finally {
+                lock.unlock();
             }
 
-            // Nunca deve chegar aqui, mas para satisfazer o compilador
-            throw new SQLException("Falha após múltiplas tentativas");
-        } finally {
-            lock.unlock();
+            // Espera exponencial, já sem o lock
+            long waitMs = baseWaitTimeMs * (1L << retryCount);
+            if (Deadline.remainingNanos() <= TimeUnit.MILLISECONDS.toNanos(waitMs)) {
+                throw Deadline.expired("nova tentativa para o cliente " + clientId);
+            }
+            retries.increment();
+            try {
+                Thread.sleep(waitMs);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrompido durante nova tentativa", ie);
+            }
         }
     }
 
     /**
      * Implementação interna da atualização atômica
      */
-    private int[] atomicUpdateInternal(int clientId, String tipo, int valor) throws SQLException {
-        final String SQL_ATOMIC_UPDATE =
-                "UPDATE clientes SET saldo = " +
-                        "CASE " +
-                        "  WHEN (? = 'c') THEN saldo + ? " +
-                        "  WHEN (? = 'd' AND (saldo - ?) >= -limite) THEN saldo - ? " +
-                        "  ELSE saldo " +
-                        "END " +
-                        "WHERE id = ? RETURNING saldo, limite, " +
-                        "CASE " +
-                        "  WHEN (? = 'd' AND (saldo - ?) < -limite) THEN 0 " +
-                        "  ELSE 1 " +
-                        "END as success";
+    private int[] atomicUpdateInternal(int clientId, String tipo, int valor, boolean advisory) throws SQLException {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            if (advisory) {
+                PreparedStatement lockStmt = StatementRegistry.prepare(conn, SQL_ADVISORY_LOCK);
+                lockStmt.setLong(1, clientId);
+                lockStmt.executeQuery().close();
+            }
 
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(SQL_ATOMIC_UPDATE)) {
-            stmt.setString(1, tipo);
-            stmt.setInt(2, valor);
-            stmt.setString(3, tipo);
-            stmt.setInt(4, valor);
-            stmt.setInt(5, valor);
-            stmt.setInt(6, clientId);
-            stmt.setString(7, tipo);
-            stmt.setInt(8, valor);
+            int delta = "c".equals(tipo) ? valor : -valor;
+            PreparedStatement stmt = StatementRegistry.prepare(conn, SQL_ATOMIC_UPDATE);
+            stmt.setInt(1, delta);
+            stmt.setInt(2, clientId);
+            stmt.setInt(3, delta);
+            stmt.setInt(4, clientId);
 
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     int newSaldo = rs.getInt("saldo");
                     int limite = rs.getInt("limite");
                     int success = rs.getInt("success");
+                    conn.commit();
 
                     // Atualiza o cache se o cliente estiver nele
-                    Cliente cachedCliente = clienteCache.get(clientId);
-                    if (cachedCliente != null && success == 1) {
-                        cachedCliente.setSaldo(newSaldo);
+                    if (success == 1) {
+                        updateCachedBalance(clientId, newSaldo, rs.getInt("versao"));
+                    }
+
+                    return new int[] { newSaldo, limite, success };
+                }
+                throw new SQLException("Falha na atualização do saldo");
+            }
+        }
+    }
+
+    /**
+     * Atualização otimista: lê saldo e versão, calcula o novo saldo e grava com compare-and-set
+     * Se outra instância alterou o cliente entre a leitura e a gravação, lança um conflito (40001)
+     * para que withRetry tente de novo
+     */
+    private int[] optimisticUpdate(int clientId, String tipo, int valor) throws SQLException {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            PreparedStatement select = StatementRegistry.prepare(conn, SQL_GET_VERSIONED);
+            select.setInt(1, clientId);
+            int saldo;
+            int limite;
+            int versao;
+            try (ResultSet rs = select.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Falha na atualização do saldo");
+                }
+                saldo = rs.getInt("saldo");
+                limite = rs.getInt("limite");
+                versao = rs.getInt("versao");
+            }
+
+            int newSaldo = "c".equals(tipo) ? saldo + valor : saldo - valor;
+            if (newSaldo < -limite) {
+                return new int[] { saldo, limite, 0 };
+            }
+
+            PreparedStatement update = StatementRegistry.prepare(conn, SQL_COMPARE_AND_SET);
+            update.setInt(1, newSaldo);
+            update.setInt(2, clientId);
+            update.setInt(3, versao);
+            if (update.executeUpdate() == 0) {
+                conn.rollback();
+                throw new SQLException("Conflito de versão para o cliente " + clientId, "40001");
+            }
+            conn.commit();
+
+            updateCachedBalance(clientId, newSaldo, versao + 1);
+            return new int[] { newSaldo, limite, 1 };
+        }
+    }
+
+    /**
+     * Chama a procedure pr_processar_transacao e confirma a transação
+     */
+    private int[] callProcedure(Transacao transacao) throws SQLException {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            PreparedStatement stmt = StatementRegistry.prepare(conn, SQL_CALL_PROCEDURE);
+            stmt.setInt(1, transacao.getClienteId());
+            stmt.setInt(2, transacao.getValor());
+            stmt.setString(3, transacao.getTipo());
+            stmt.setString(4, transacao.getDescricao());
+            stmt.setObject(5, transacao.getRealizadaEm().toOffsetDateTime());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    int newSaldo = rs.getInt("p_novo_saldo");
+                    int limite = rs.getInt("p_limite");
+                    boolean success = rs.getBoolean("p_sucesso");
+                    conn.commit();
+
+                    if (!success) {
+                        // A procedure devolve o saldo que o débito teria gerado; desfaz para o saldo atual
+                        return new int[] { newSaldo + transacao.getValor(), limite, 0 };
                     }
+                    updateCachedBalance(transacao.getClienteId(), newSaldo, rs.getInt("p_versao"));
+                    return new int[] { newSaldo, limite, 1 };
+                }
+                throw new SQLException("Falha na atualização do saldo");
+            }
+        }
+    }
+
+    /**
+     * Executa o UPDATE + INSERT em um único comando e confirma a transação
+     */
+    private int[] updateWithHistory(Transacao transacao) throws SQLException {
+        int delta = "c".equals(transacao.getTipo()) ? transacao.getValor() : -transacao.getValor();
 
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            PreparedStatement stmt = StatementRegistry.prepare(conn, SQL_UPDATE_WITH_HISTORY);
+            stmt.setInt(1, delta);
+            stmt.setInt(2, transacao.getClienteId());
+            stmt.setInt(3, delta);
+            stmt.setInt(4, transacao.getClienteId());
+            stmt.setInt(5, transacao.getValor());
+            stmt.setString(6, transacao.getTipo());
+            stmt.setString(7, transacao.getDescricao());
+            stmt.setObject(8, transacao.getRealizadaEm().toOffsetDateTime());
+            stmt.setInt(9, transacao.getClienteId());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    int newSaldo = rs.getInt("saldo");
+                    int limite = rs.getInt("limite");
+                    int success = rs.getInt("success");
+                    conn.commit();
+
+                    if (success == 1) {
+                        updateCachedBalance(transacao.getClienteId(), newSaldo, rs.getInt("versao"));
+                    }
                     return new int[] { newSaldo, limite, success };
                 }
                 throw new SQLException("Falha na atualização do saldo");
@@ -218,11 +507,85 @@ public class ClienteRepository {
         }
     }
 
+    /**
+     * Aplica um lote de transações do cliente com fn_processar_lote (executado pelo ator do cliente
+     * ou, no group commit, pela requisição que detém o lock do cliente)
+     * Conflitos com outras instâncias (SQLState 40xxx) são repetidos; o lote é o único escritor local
+     */
+    private static int[][] applyBatch(int clientId, List<Transacao> transacoes) throws SQLException {
+        int size = transacoes.size();
+        Integer[] valores = new Integer[size];
+        String[] tipos = new String[size];
+        String[] descricoes = new String[size];
+        String[] realizadasEm = new String[size];
+        for (int i = 0; i < size; i++) {
+            Transacao transacao = transacoes.get(i);
+            valores[i] = transacao.getValor();
+            tipos[i] = transacao.getTipo();
+            descricoes[i] = transacao.getDescricao();
+            realizadasEm[i] = transacao.getRealizadaEm().toOffsetDateTime().toString();
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try (Connection conn = DatabaseConfig.getConnection()) {
+                Array valoresArray = conn.createArrayOf("integer", valores);
+                Array tiposArray = conn.createArrayOf("text", tipos);
+                Array descricoesArray = conn.createArrayOf("text", descricoes);
+                Array realizadasEmArray = conn.createArrayOf("text", realizadasEm);
+
+                PreparedStatement stmt = StatementRegistry.prepare(conn, SQL_PROCESS_BATCH);
+                stmt.setInt(1, clientId);
+                stmt.setArray(2, valoresArray);
+                stmt.setArray(3, tiposArray);
+                stmt.setArray(4, descricoesArray);
+                stmt.setArray(5, realizadasEmArray);
+
+                int[][] results = new int[size][];
+                int lastSaldo = 0;
+                int lastVersao = -1;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        int ordem = rs.getInt("ordem");
+                        int saldo = rs.getInt("novo_saldo");
+                        results[ordem - 1] = new int[] {
+                                saldo, rs.getInt("limite_cliente"), rs.getBoolean("sucesso") ? 1 : 0 };
+                        lastSaldo = saldo;
+                        lastVersao = rs.getInt("nova_versao");
+                    }
+                }
+                if (size > 0 && results[size - 1] == null) {
+                    throw new SQLException("Falha na atualização do saldo");
+                }
+                conn.commit();
+
+                // A última linha tem o saldo e a versão finais do lote
+                updateCachedBalance(clientId, lastSaldo, lastVersao);
+                return results;
+            } catch (SQLException e) {
+                if (e.getSQLState() == null || !e.getSQLState().startsWith("40") || attempt >= 3) {
+                    throw e;
+                }
+                conflicts.increment();
+                retries.increment();
+            }
+        }
+    }
+
+    /**
+     * Atualiza o saldo do cliente no cache, se ele estiver em cache
+     */
+    private static void updateCachedBalance(int clientId, int saldo, int versao) {
+        Cliente cachedCliente = clientStates.get(clientId);
+        if (cachedCliente != null) {
+            cachedCliente.atualizarSaldo(saldo, versao);
+        }
+    }
+
     /**
      * Limpa o cache de clientes
      */
     public void clearCache() {
-        clienteCache.clear();
+        clientStates.clear();
     }
 
     /**
@@ -231,16 +594,17 @@ public class ClienteRepository {
      */
     public void preloadClientCache() throws SQLException {
         try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT id, nome, limite, saldo FROM clientes")) {
+             PreparedStatement stmt = conn.prepareStatement("SELECT id, nome, limite, saldo, versao FROM clientes")) {
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
                     Cliente cliente = new Cliente(
                             rs.getInt("id"),
                             rs.getString("nome"),
                             rs.getInt("limite"),
-                            rs.getInt("saldo")
+                            rs.getInt("saldo"),
+                            rs.getInt("versao")
                     );
-                    clienteCache.put(cliente.getId(), cliente);
+                    clientStates.put(cliente);
                 }
             }
         }
@@ -0,0 +1,217 @@
+package br.com.rinha.repository;
+
+import br.com.rinha.config.AppConfig;
+import br.com.rinha.config.DatabaseConfig;
+import br.com.rinha.metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manutenção das partições diárias (UTC) de transacoes, particionada por intervalo de realizada_em
+ * Cria as partições dos próximos dias com antecedência e, se houver prazo de retenção (por padrão
+ * não há), desanexa as antigas (que ficam como tabelas de arquivo) ou as apaga. Cada partição tem seus próprios
+ * índices, então o tamanho dos índices e o custo do vacuum não crescem com o tempo de execução.
+ *
+ * Com várias instâncias da API, um advisory lock garante que só uma faz a manutenção por vez.
+ */
+public final class PartitionManager {
+    private static final String PARENT = "transacoes";
+    private static final String PREFIX = PARENT + "_p";
+    private static final DateTimeFormatter SUFFIX_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    // Chave do advisory lock da manutenção ("part" em ASCII)
+    private static final long LOCK_KEY = 0x70617274L;
+
+    private static final String SQL_TRY_LOCK = "SELECT pg_try_advisory_lock(?)";
+    private static final String SQL_UNLOCK = "SELECT pg_advisory_unlock(?)";
+
+    private static final String SQL_LIST_PARTITIONS =
+            "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = '" + PARENT + "'::regclass";
+
+    private static final PartitionManager instance = new PartitionManager();
+
+    private final int daysAhead = AppConfig.partitionDaysAhead();
+    private final int retentionDays = AppConfig.partitionRetentionDays();
+    private final AppConfig.PartitionRetention retention = AppConfig.partitionRetention();
+    private final int checkMinutes = AppConfig.partitionCheckMinutes();
+
+    // Última contagem de partições anexadas, exposta em /metrics
+    private volatile long partitionCount;
+
+    private PartitionManager() {
+        Metrics.gauge("transacoes_particoes", () -> partitionCount);
+    }
+
+    /**
+     * Obtém a instância do processo
+     * @return gerenciador de partições
+     */
+    public static PartitionManager getInstance() {
+        return instance;
+    }
+
+    /**
+     * Executa a manutenção uma vez (antes de aceitar requisições) e agenda as seguintes
+     */
+    public void start() {
+        maintain();
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "transacao-particoes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::maintain, checkMinutes, checkMinutes, TimeUnit.MINUTES);
+        System.out.println("Partições de transacoes: " + daysAhead + " dia(s) à frente, retenção de "
+                + (retentionDays > 0 ? retentionDays + " dia(s) (" + retention + ")" : "tempo indeterminado")
+                + ", verificação a cada " + checkMinutes + " min");
+    }
+
+    /**
+     * Início da partição que recebe as transações de agora
+     * @return meia-noite UTC de hoje
+     */
+    public static OffsetDateTime currentPartitionStart() {
+        return LocalDate.now(ZoneOffset.UTC).atStartOfDay().atOffset(ZoneOffset.UTC);
+    }
+
+    /**
+     * Cria as partições que faltam e aplica a retenção; erros são registrados e a próxima execução tenta de novo
+     */
+    void maintain() {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            if (!tryLock(conn)) {
+                // Outra instância está fazendo a manutenção
+                return;
+            }
+            try {
+                List<String> partitions = listPartitions(conn);
+                LocalDate today = LocalDate.now(ZoneOffset.UTC);
+
+                for (int i = 0; i <= daysAhead; i++) {
+                    LocalDate day = today.plusDays(i);
+                    if (!partitions.contains(partitionName(day))) {
+                        createPartition(conn, day);
+                        partitions.add(partitionName(day));
+                    }
+                }
+
+                if (retentionDays > 0) {
+                    LocalDate oldestKept = today.minusDays(retentionDays);
+                    for (String partition : new ArrayList<>(partitions)) {
+                        LocalDate day = parseDay(partition);
+                        if (day != null && day.isBefore(oldestKept)) {
+                            retire(conn, partition);
+                            partitions.remove(partition);
+                        }
+                    }
+                }
+                partitionCount = partitions.size();
+            } finally {
+                unlock(conn);
+            }
+        } catch (SQLException e) {
+            System.err.println("Erro na manutenção das partições de transacoes: " + e.getMessage());
+        }
+    }
+
+    private boolean tryLock(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_TRY_LOCK)) {
+            stmt.setLong(1, LOCK_KEY);
+            try (ResultSet rs = stmt.executeQuery()) {
+                boolean locked = rs.next() && rs.getBoolean(1);
+                conn.commit();
+                return locked;
+            }
+        }
+    }
+
+    private void unlock(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_UNLOCK)) {
+            stmt.setLong(1, LOCK_KEY);
+            stmt.execute();
+            conn.commit();
+        }
+    }
+
+    private List<String> listPartitions(Connection conn) throws SQLException {
+        List<String> partitions = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_LIST_PARTITIONS);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                partitions.add(rs.getString(1));
+            }
+        }
+        conn.commit();
+        return partitions;
+    }
+
+    /**
+     * Cria a partição de um dia; o lock_timeout evita enfileirar as gravações atrás do DDL
+     */
+    private void createPartition(Connection conn, LocalDate day) throws SQLException {
+        String sql = "CREATE TABLE IF NOT EXISTS " + partitionName(day) + " PARTITION OF " + PARENT +
+                " FOR VALUES FROM ('" + day + " 00:00:00+00') TO ('" + day.plusDays(1) + " 00:00:00+00')";
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SET LOCAL lock_timeout = '2s'");
+            stmt.execute(sql);
+            conn.commit();
+            System.out.println("Partição criada: " + partitionName(day));
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Desanexa a partição (sem bloquear as gravações) e, se configurado, a apaga
+     */
+    private void retire(Connection conn, String partition) throws SQLException {
+        // DETACH CONCURRENTLY não pode rodar dentro de uma transação
+        conn.setAutoCommit(true);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE " + PARENT + " DETACH PARTITION " + partition + " CONCURRENTLY");
+            if (retention == AppConfig.PartitionRetention.DROP) {
+                stmt.execute("DROP TABLE " + partition);
+                System.out.println("Partição apagada: " + partition);
+            } else {
+                System.out.println("Partição desanexada para arquivo: " + partition);
+            }
+        } finally {
+            conn.setAutoCommit(false);
+        }
+    }
+
+    private static String partitionName(LocalDate day) {
+        return PREFIX + day.format(SUFFIX_FORMAT);
+    }
+
+    /**
+     * Extrai o dia do nome da partição
+     * @return dia da partição, ou null se o nome não seguir o padrão (partição criada fora da aplicação)
+     */
+    private static LocalDate parseDay(String partition) {
+        if (!partition.startsWith(PREFIX) || partition.length() != PREFIX.length() + 8) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(partition.substring(PREFIX.length()), SUFFIX_FORMAT);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
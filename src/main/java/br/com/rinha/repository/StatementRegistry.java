@@ -0,0 +1,77 @@
+package br.com.rinha.repository;
+
+import br.com.rinha.config.DatabaseConfig;
+import br.com.rinha.util.Deadline;
+import org.postgresql.PGConnection;
+import org.postgresql.PGStatement;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro de PreparedStatements prontos por conexão física do pool
+ * O comando é preparado uma vez em cada conexão do PostgreSQL e reutilizado nos próximos
+ * empréstimos dela: sem novo parse no driver, sem novo objeto de statement e, com o
+ * prepareThreshold em 1, com o plano nomeado no servidor e resultados em formato binário.
+ *
+ * Os statements são criados na conexão física (fora do proxy do Hikari, que fecharia os
+ * statements na devolução), então o chamador NÃO deve fechá-los; só o ResultSet.
+ * Cada conexão física é usada por uma thread de cada vez, então o mapa interno não precisa de lock.
+ *
+ * A cada entrega o timeout do comando é ajustado ao prazo da requisição em andamento (Deadline).
+ */
+final class StatementRegistry {
+    private static final ConcurrentHashMap<PGConnection, Map<String, PreparedStatement>> handles =
+            new ConcurrentHashMap<>();
+
+    private StatementRegistry() {
+    }
+
+    /**
+     * Obtém o statement pronto do comando na conexão física por trás da conexão emprestada
+     * @param conn conexão obtida de DatabaseConfig.getConnection()
+     * @param sql constante SQL do repositório
+     * @return statement reutilizável; os parâmetros de uso anterior são sobrescritos pelo chamador
+     * @throws SQLException em caso de erro ao preparar o comando (SQLTimeoutException se o prazo acabou)
+     */
+    static PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        Deadline.check("executar comando");
+
+        PGConnection physical = conn.unwrap(PGConnection.class);
+        Map<String, PreparedStatement> statements = handles.get(physical);
+        if (statements == null) {
+            // Conexão nova no pool: aproveita para esquecer as que o Hikari já fechou
+            handles.keySet().removeIf(StatementRegistry::isClosed);
+            statements = new HashMap<>();
+            handles.put(physical, statements);
+        }
+
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null) {
+            // A implementação de PGConnection do driver é a própria java.sql.Connection
+            PreparedStatement created = ((Connection) physical).prepareStatement(sql);
+            created.unwrap(PGStatement.class).setPrepareThreshold(1);
+            stmt = DatabaseConfig.instrument(created, sql);
+            statements.put(sql, stmt);
+        }
+        // Statement reaproveitado: o timeout do uso anterior pode não valer mais, mas só é alterado quando
+        // muda; fora de uma requisição ou com prazo folgado fica 0 e nenhum cancelamento é agendado
+        int timeout = Deadline.queryTimeoutSeconds(DatabaseConfig.SOCKET_TIMEOUT_SECONDS);
+        if (stmt.getQueryTimeout() != timeout) {
+            stmt.setQueryTimeout(timeout);
+        }
+        return stmt;
+    }
+
+    private static boolean isClosed(PGConnection connection) {
+        try {
+            return ((Connection) connection).isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package br.com.rinha.repository;
+
+import br.com.rinha.config.AppConfig;
+import br.com.rinha.config.DatabaseConfig;
+import br.com.rinha.metrics.Metrics;
+import br.com.rinha.model.Transacao;
+import br.com.rinha.util.Deadline;
+import br.com.rinha.util.TimestampFormatter;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Gravação assíncrona (write-behind) do histórico de transações
+ * Única por processo: todas as instâncias de TransacaoRepository compartilham a mesma fila,
+ * o mesmo WAL e o mesmo consumidor, para que a ordem da fila seja a ordem do log.
+ *
+ * O consumidor grava assim que a fila atinge o tamanho mínimo de lote ou quando a transação
+ * mais antiga espera o tempo máximo de permanência; o lote cresce com a profundidade da fila
+ * até o tamanho máximo. Com a fila cheia, saveAsync bloqueia o chamador (backpressure).
+ */
+final class TransacaoBatcher {
+    private static final String SQL_RECORD_TRANSACTION =
+            "INSERT INTO transacoes (cliente_id, valor, tipo, descricao, realizada_em) VALUES (?, ?, ?, ?, ?)";
+
+    // Usado apenas na recuperação do WAL: o lote pode ter sido confirmado no banco antes do checkpoint
+    private static final String SQL_RECORD_TRANSACTION_IF_ABSENT =
+            "INSERT INTO transacoes (cliente_id, valor, tipo, descricao, realizada_em) " +
+            "SELECT ?, ?, ?, ?, ? WHERE NOT EXISTS (" +
+            "  SELECT 1 FROM transacoes WHERE cliente_id = ? AND realizada_em = ? " +
+            "  AND valor = ? AND tipo = ? AND descricao = ?)";
+
+    // COPY em formato texto: colunas separadas por tab, uma linha por transação
+    private static final String SQL_COPY_TRANSACTIONS =
+            "COPY transacoes (cliente_id, valor, tipo, descricao, realizada_em) FROM STDIN";
+
+    private static final ReentrantLock instanceLock = new ReentrantLock();
+    private static volatile TransacaoBatcher instance;
+
+    // Limites do lote e da fila
+    private final int minBatchSize = AppConfig.flushBatchSize();
+    private final int maxBatchSize = Math.max(minBatchSize, AppConfig.flushMaxBatchSize());
+    private final long lingerNanos = TimeUnit.MILLISECONDS.toNanos(AppConfig.flushLingerMs());
+    private final int queueCapacity = AppConfig.queueCapacity();
+
+    // Buffer circular pré-alocado com as transações pendentes para salvamento assíncrono
+    private final TransacaoRing ring = new TransacaoRing(queueCapacity);
+
+    // Uma permissão por vaga na fila; devolvidas só depois que o lote é gravado
+    private final Semaphore freeSlots = new Semaphore(queueCapacity);
+
+    // Anexar ao WAL e enfileirar sob o mesmo lock mantém a ordem da fila igual à do log;
+    // sem WAL os produtores publicam no buffer sem lock
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final TransacaoWal wal;
+
+    // Registros anexados ao WAL (incluindo os recuperados) e já confirmados no checkpoint (appendLock).
+    // Após uma falha de escrita o WAL é abandonado: as transações seguintes vão só para a fila, e o
+    // checkpoint avança apenas pelos registros que estão de fato no log, nunca além deles
+    private long walAppended;
+    private long walCommitted;
+    private volatile boolean walFailed;
+
+    // Transações recuperadas do WAL, gravadas antes da fila e sem duplicar o que já estiver no banco
+    private final List<Transacao> recovered = new ArrayList<>();
+    private volatile boolean recoveredPending;
+
+    // Espera máxima de awaitWritten fora de uma requisição (warmup)
+    private static final long AWAIT_WRITTEN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    // O último lote falhou: o próximo relê as mesmas posições do buffer com o INSERT idempotente
+    private boolean retrying;
+
+    // Consumidor único da fila
+    private final Thread flusher = new Thread(this::runFlusher, "transacao-flusher");
+    private volatile boolean running = true;
+    private volatile boolean backpressureLogged;
+
+    private final AppConfig.IngestMode ingestMode = AppConfig.ingestMode();
+
+    // Buffer reutilizado para montar as linhas do COPY (usado apenas pelo consumidor)
+    private byte[] copyBuffer = new byte[4096];
+
+    private TransacaoBatcher() {
+        this.wal = openWal();
+        this.walAppended = recovered.size();
+        this.recoveredPending = !recovered.isEmpty();
+        Metrics.gauge("transacoes_pendentes", ring::depth);
+        Metrics.gauge("transacoes_pendentes_max", ring::highWatermark);
+    }
+
+    /**
+     * Obtém o batcher do processo, iniciando-o na primeira chamada
+     * @return batcher compartilhado
+     */
+    static TransacaoBatcher getInstance() {
+        TransacaoBatcher current = instance;
+        if (current != null) {
+            return current;
+        }
+        instanceLock.lock();
+        try {
+            if (instance == null) {
+                TransacaoBatcher batcher = new TransacaoBatcher();
+                batcher.start();
+                instance = batcher;
+            }
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    /**
+     * Anexa a transação ao WAL e a coloca na fila; retorna sem esperar o banco
+     * @param transacao transação a ser salva
+     */
+    void enqueue(Transacao transacao) {
+        // Reserva a vaga fora do lock: um produtor bloqueado não impede o consumidor de liberar vagas
+        if (!freeSlots.tryAcquire()) {
+            if (!backpressureLogged) {
+                backpressureLogged = true;
+                System.out.println("Fila de transações cheia (" + queueCapacity + "), aguardando o banco");
+            }
+            // A transação já foi aplicada ao saldo e precisa entrar na fila, mas nunca sem vaga: o buffer
+            // pré-alocado depende das permissões para um produtor não sobrescrever posição não consumida.
+            // Uma interrupção não encerra a espera; o status de interrupção volta ao retornar
+            freeSlots.acquireUninterruptibly();
+        }
+
+        if (wal == null || walFailed) {
+            ring.offer(transacao);
+        } else {
+            appendLock.lock();
+            try {
+                if (!walFailed) {
+                    try {
+                        wal.append(transacao);
+                        walAppended++;
+                    } catch (IOException e) {
+                        // Sem o log a transação ainda é gravada, apenas sem proteção contra queda do processo
+                        walFailed = true;
+                        System.err.println("Erro ao anexar transação ao WAL, seguindo sem ele: " + e.getMessage());
+                    }
+                }
+                ring.offer(transacao);
+            } finally {
+                appendLock.unlock();
+            }
+        }
+
+        // Acorda o consumidor só quando há um lote completo; abaixo disso ele espera o tempo de permanência
+        if (depth() >= minBatchSize) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    /**
+     * Aguarda a gravação no banco de tudo o que foi enfileirado até agora, inclusive o recuperado do WAL
+     * Espera no máximo o prazo da requisição ou, fora de uma requisição, 10 segundos.
+     * @throws SQLException se a fila não foi gravada a tempo (SQLTimeoutException)
+     */
+    void awaitWritten() throws SQLException {
+        long target = ring.reserved();
+        long limit = Deadline.limitNanos(AWAIT_WRITTEN_TIMEOUT_NANOS);
+        while (recoveredPending || ring.released() < target) {
+            if (System.nanoTime() - limit >= 0) {
+                Deadline.check("aguardar a fila de transações");
+                throw new SQLTimeoutException("Fila de transações não foi gravada a tempo");
+            }
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Quantidade de transações na fila aguardando gravação
+     * @return profundidade atual da fila
+     */
+    int depth() {
+        return (int) ring.depth();
+    }
+
+    /**
+     * Maior profundidade da fila observada desde a inicialização
+     * @return marca d'água da fila
+     */
+    int highWatermark() {
+        return (int) ring.highWatermark();
+    }
+
+    private TransacaoWal openWal() {
+        String directory = AppConfig.walDir();
+        if (directory == null) {
+            System.out.println("WAL desativado: transações pendentes podem ser perdidas em caso de queda");
+            return null;
+        }
+        try {
+            TransacaoWal opened = TransacaoWal.open(Path.of(directory), AppConfig.walSegmentSize(), recovered);
+            if (!recovered.isEmpty()) {
+                System.out.println("WAL: " + recovered.size() + " transações recuperadas para regravação");
+            }
+            return opened;
+        } catch (IOException e) {
+            System.err.println("Erro ao abrir o WAL em " + directory + ", seguindo sem ele: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void start() {
+        flusher.setDaemon(true);
+        flusher.start();
+
+        // Registra shutdown hook para garantir que transações pendentes sejam processadas
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            running = false;
+            LockSupport.unpark(flusher);
+            try {
+                // Aguarda até 5 segundos o lote em andamento
+                flusher.join(5000);
+
+                // Processa manualmente quaisquer transações restantes
+                if (!flusher.isAlive()) {
+                    while (processBatchTransactions()) {
+                        // continua enquanto houver lotes gravados com sucesso
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (wal != null) {
+                    wal.close();
+                }
+            }
+        }));
+    }
+
+    /**
+     * Laço do consumidor: grava quando há um lote mínimo ou quando a transação mais antiga
+     * atinge o tempo máximo de permanência; após uma falha, espera com backoff exponencial
+     */
+    private void runFlusher() {
+        long waitingSince = 0;
+        long failureBackoffMs = 0;
+
+        while (running) {
+            boolean backlog = retrying || !recovered.isEmpty();
+            int depth = depth();
+            long now = System.nanoTime();
+
+            if (depth == 0 && !backlog) {
+                waitingSince = 0;
+                LockSupport.parkNanos(this, lingerNanos);
+                continue;
+            }
+            if (waitingSince == 0) {
+                waitingSince = now;
+            }
+            long lingered = now - waitingSince;
+            if (!backlog && depth < minBatchSize && lingered < lingerNanos) {
+                LockSupport.parkNanos(this, lingerNanos - lingered);
+                continue;
+            }
+
+            if (processBatchTransactions()) {
+                failureBackoffMs = 0;
+                // Se ainda sobrou um lote completo, grava de imediato; senão recomeça a contar a permanência
+                waitingSince = depth() >= minBatchSize ? waitingSince : 0;
+            } else if (retrying) {
+                failureBackoffMs = Math.min(Math.max(failureBackoffMs * 2, 50), 2000);
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(failureBackoffMs));
+            }
+        }
+    }
+
+    /**
+     * Grava um lote: primeiro as transações recuperadas do WAL e depois o buffer
+     * Este método é chamado pelo consumidor (ou pelo shutdown hook, com o consumidor parado)
+     * @return true se um lote foi gravado
+     */
+    private boolean processBatchTransactions() {
+        try {
+            if (!recovered.isEmpty()) {
+                List<Transacao> head = recovered.subList(0, Math.min(maxBatchSize, recovered.size()));
+                // Pode já estar no banco: precisa do INSERT idempotente, que o COPY não oferece
+                insertBatch(head, true);
+                int count = head.size();
+                head.clear();
+                recoveredPending = !recovered.isEmpty();
+                retrying = false;
+                commitWal(count);
+                return true;
+            }
+
+            // O lote acompanha a profundidade da fila, até o tamanho máximo
+            int count = ring.peek(maxBatchSize);
+            if (count == 0) {
+                return false;
+            }
+            if (retrying) {
+                insertBatch(ringBatch(count), true);
+            } else if (ingestMode == AppConfig.IngestMode.COPY) {
+                copyBatch(count);
+            } else {
+                insertBatch(ringBatch(count), false);
+            }
+            retrying = false;
+            ring.commit(count);
+            freeSlots.release(count);
+            commitWal(count);
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Erro ao processar lote de transações: " + e.getMessage());
+            e.printStackTrace();
+
+            // Nada é liberado: a próxima tentativa relê o mesmo lote, antes de qualquer transação mais nova
+            retrying = true;
+            return false;
+        }
+    }
+
+    /**
+     * Materializa as primeiras posições do buffer para o caminho JDBC
+     */
+    private List<Transacao> ringBatch(int count) {
+        List<Transacao> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            batch.add(ring.get(i));
+        }
+        return batch;
+    }
+
+    /**
+     * Insere o lote em uma única transação
+     * @param ifAbsent usa o INSERT idempotente (lote recuperado ou repetido após falha)
+     */
+    private void insertBatch(List<Transacao> batch, boolean ifAbsent) throws SQLException {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    ifAbsent ? SQL_RECORD_TRANSACTION_IF_ABSENT : SQL_RECORD_TRANSACTION)) {
+                for (Transacao transacao : batch) {
+                    stmt.setInt(1, transacao.getClienteId());
+                    stmt.setInt(2, transacao.getValor());
+                    stmt.setString(3, transacao.getTipo());
+                    stmt.setString(4, transacao.getDescricao());
+                    stmt.setObject(5, transacao.getRealizadaEm().toOffsetDateTime());
+                    if (ifAbsent) {
+                        stmt.setInt(6, transacao.getClienteId());
+                        stmt.setObject(7, transacao.getRealizadaEm().toOffsetDateTime());
+                        stmt.setInt(8, transacao.getValor());
+                        stmt.setString(9, transacao.getTipo());
+                        stmt.setString(10, transacao.getDescricao());
+                    }
+                    stmt.addBatch();
+                }
+
+                stmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Envia as primeiras posições do buffer pelo protocolo COPY em uma única transação
+     */
+    private void copyBatch(int count) throws SQLException {
+        int length = encodeCopyRows(count);
+
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+
+            CopyIn copyIn = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(SQL_COPY_TRANSACTIONS);
+            try {
+                copyIn.writeToCopy(copyBuffer, 0, length);
+                copyIn.endCopy();
+                conn.commit();
+            } catch (SQLException e) {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Codifica as posições do buffer no formato texto do COPY: cliente \t valor \t tipo \t descrição \t data \n
+     * @return quantidade de bytes escritos em copyBuffer
+     */
+    private int encodeCopyRows(int count) {
+        // Pior caso por linha: inteiros com sinal, descrição escapada e o timestamp
+        int maxRow = 11 + 1 + 11 + 1 + 1 + 1 + TransacaoRing.MAX_DESCRICAO_BYTES * 2 + 1 + TimestampFormatter.LENGTH + 1;
+        if (count * maxRow > copyBuffer.length) {
+            copyBuffer = new byte[count * maxRow];
+        }
+        byte[] buf = copyBuffer;
+        byte[] descricoes = ring.descricoes();
+
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            pos = writeInt(buf, pos, ring.clienteId(i));
+            buf[pos++] = '\t';
+            pos = writeInt(buf, pos, ring.valor(i));
+            buf[pos++] = '\t';
+            buf[pos++] = ring.tipo(i);
+            buf[pos++] = '\t';
+            pos = writeCopyText(buf, pos, descricoes, ring.descricaoOffset(i), ring.descricaoLength(i));
+            buf[pos++] = '\t';
+            pos = TimestampFormatter.write(buf, pos, ring.segundos(i), ring.nanos(i));
+            buf[pos++] = '\n';
+        }
+        return pos;
+    }
+
+    private static int writeInt(byte[] buf, int pos, int value) {
+        long v = value;
+        if (v < 0) {
+            buf[pos++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) {
+            digits++;
+        }
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        return pos + digits;
+    }
+
+    /**
+     * Copia o texto UTF-8 escapando os caracteres especiais do formato texto do COPY
+     * (bytes de caracteres multibyte nunca coincidem com esses caracteres ASCII)
+     */
+    private static int writeCopyText(byte[] buf, int pos, byte[] text, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            byte b = text[i];
+            switch (b) {
+                case '\\' -> {
+                    buf[pos++] = '\\';
+                    buf[pos++] = '\\';
+                }
+                case '\t' -> {
+                    buf[pos++] = '\\';
+                    buf[pos++] = 't';
+                }
+                case '\n' -> {
+                    buf[pos++] = '\\';
+                    buf[pos++] = 'n';
+                }
+                case '\r' -> {
+                    buf[pos++] = '\\';
+                    buf[pos++] = 'r';
+                }
+                default -> buf[pos++] = b;
+            }
+        }
+        return pos;
+    }
+
+    private void commitWal(int count) {
+        if (wal == null) {
+            return;
+        }
+        appendLock.lock();
+        try {
+            // Depois de uma falha do WAL, a fila tem transações que não estão no log
+            int logged = (int) Math.min(count, walAppended - walCommitted);
+            if (logged > 0) {
+                wal.commit(logged);
+                walCommitted += logged;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+}
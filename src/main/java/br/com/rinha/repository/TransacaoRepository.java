@@ -1,5 +1,6 @@
 package br.com.rinha.repository;
 
+import br.com.rinha.config.AppConfig;
 import br.com.rinha.config.DatabaseConfig;
 import br.com.rinha.model.Transacao;
 
@@ -8,14 +9,11 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Repositório para operações relacionadas a transações no banco de dados
@@ -23,41 +21,75 @@ import java.util.concurrent.TimeUnit;
  */
 public class TransacaoRepository {
     private static final String SQL_RECORD_TRANSACTION =
-            "INSERT INTO transacoes (cliente_id, valor, tipo, descricao) VALUES (?, ?, ?, ?)";
+            "INSERT INTO transacoes (cliente_id, valor, tipo, descricao, realizada_em) VALUES (?, ?, ?, ?, ?)";
 
     private static final String SQL_GET_TRANSACTIONS =
             "SELECT valor, tipo, descricao, realizada_em FROM transacoes " +
                     "WHERE cliente_id = ? ORDER BY realizada_em DESC LIMIT 10";
 
-    // Fila para armazenar transações pendentes para salvamento assíncrono
-    private final ConcurrentLinkedQueue<Transacao> transactionQueue = new ConcurrentLinkedQueue<>();
+    // Mesma consulta restrita à partição mais nova; as demais partições são podadas
+    private static final String SQL_GET_TRANSACTIONS_CURRENT_PARTITION =
+            "SELECT valor, tipo, descricao, realizada_em FROM transacoes " +
+                    "WHERE cliente_id = ? AND realizada_em >= ? ORDER BY realizada_em DESC LIMIT 10";
+
+    // As 10 posições do cliente são lidas pela chave primária (cliente_id, slot),
+    // independente do tamanho do histórico; seq dá a ordem entre elas
+    private static final String SQL_GET_TRANSACTIONS_SLOTS =
+            "SELECT valor, tipo, descricao, realizada_em FROM transacoes_recentes " +
+                    "WHERE cliente_id = ? ORDER BY seq DESC";
+
+    // Últimas transações do cliente c.id para o extrato em JSON, com a coluna de ordenação
+    private static final String SQL_RECENTES_ARQUIVO =
+            "SELECT valor, tipo, descricao, realizada_em, realizada_em AS ordem FROM transacoes " +
+                    "WHERE cliente_id = c.id ORDER BY realizada_em DESC LIMIT 10";
+
+    private static final String SQL_RECENTES_SLOTS =
+            "SELECT valor, tipo, descricao, realizada_em, seq AS ordem FROM transacoes_recentes " +
+                    "WHERE cliente_id = c.id";
 
-    // Executor para processamento assíncrono em batch
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final boolean slots;
+    private final String sqlGetTransactions;
+    private final String sqlGetExtratoJson;
+
+    // Gravação assíncrona compartilhada pelo processo (fila + WAL + consumidor único)
+    private final TransacaoBatcher batcher;
 
     /**
      * Construtor que inicia o processamento assíncrono de transações
      */
     public TransacaoRepository() {
-        // Processa a fila de transações a cada 100ms
-        scheduler.scheduleWithFixedDelay(this::processBatchTransactions, 100, 100, TimeUnit.MILLISECONDS);
-
-        // Registra shutdown hook para garantir que transações pendentes sejam processadas
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            scheduler.shutdown();
-            try {
-                // Aguarda até 5 segundos para processar transações pendentes
-                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                    scheduler.shutdownNow();
-                }
-
-                // Processa manualmente quaisquer transações restantes
-                processBatchTransactions();
-            } catch (InterruptedException e) {
-                scheduler.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
-        }));
+        this.batcher = TransacaoBatcher.getInstance();
+
+        this.slots = AppConfig.historicoMode() == AppConfig.HistoricoMode.SLOTS;
+        this.sqlGetTransactions = slots ? SQL_GET_TRANSACTIONS_SLOTS : SQL_GET_TRANSACTIONS;
+        this.sqlGetExtratoJson = extratoJsonSql(slots ? SQL_RECENTES_SLOTS : SQL_RECENTES_ARQUIVO);
+    }
+
+    /**
+     * Monta a consulta do extrato em JSON: saldo, limite e as últimas 10 transações
+     * saem do mesmo snapshot, já serializados pelo PostgreSQL
+     * @param recentes subconsulta das últimas transações do cliente c.id, com a coluna ordem
+     * @return SQL completo
+     */
+    private static String extratoJsonSql(String recentes) {
+        return "SELECT json_build_object(" +
+                "  'saldo', json_build_object(" +
+                "    'total', c.saldo, " +
+                "    'limite', c.limite, " +
+                "    'data_extrato', to_char(now() AT TIME ZONE 'UTC', 'YYYY-MM-DD\"T\"HH24:MI:SS.US\"Z\"')), " +
+                "  'ultimas_transacoes', COALESCE(t.itens, '[]'::json)" +
+                ")::text " +
+                "FROM clientes c " +
+                "LEFT JOIN LATERAL (" +
+                "  SELECT json_agg(json_build_object(" +
+                "    'valor', u.valor, " +
+                "    'tipo', u.tipo, " +
+                "    'descricao', u.descricao, " +
+                "    'realizada_em', to_char(u.realizada_em AT TIME ZONE 'UTC', 'YYYY-MM-DD\"T\"HH24:MI:SS.US\"Z\"')" +
+                "  ) ORDER BY u.ordem DESC) AS itens " +
+                "  FROM (" + recentes + ") u" +
+                ") t ON true " +
+                "WHERE c.id = ?";
     }
 
     /**
@@ -66,104 +98,116 @@ public class TransacaoRepository {
      * @throws SQLException em caso de erro no banco de dados
      */
     public void save(Transacao transacao) throws SQLException {
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(SQL_RECORD_TRANSACTION)) {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            PreparedStatement stmt = StatementRegistry.prepare(conn, SQL_RECORD_TRANSACTION);
             stmt.setInt(1, transacao.getClienteId());
             stmt.setInt(2, transacao.getValor());
             stmt.setString(3, transacao.getTipo());
             stmt.setString(4, transacao.getDescricao());
+            stmt.setObject(5, transacao.getRealizadaEm().toOffsetDateTime());
             stmt.executeUpdate();
+            conn.commit();
         }
     }
 
     /**
      * Adiciona uma transação para salvamento assíncrono
-     * Este método retorna imediatamente sem bloquear
+     * Este método retorna após anexar a transação ao WAL, sem esperar o banco
      * @param transacao transação a ser salva assincronamente
      */
     public void saveAsync(Transacao transacao) {
-        transactionQueue.add(transacao);
+        batcher.enqueue(transacao);
     }
 
     /**
-     * Processa um lote de transações da fila
-     * Este método é chamado periodicamente pelo scheduler
+     * Aguarda a gravação de todas as transações enfileiradas até agora (barreira da fila assíncrona)
+     * @throws SQLException se a fila não foi gravada dentro do prazo
      */
-    private void processBatchTransactions() {
-        if (transactionQueue.isEmpty()) {
-            return;
-        }
+    public void awaitPendingWrites() throws SQLException {
+        batcher.awaitWritten();
+    }
 
-        List<Transacao> batch = new ArrayList<>();
-        // Coleta até 100 transações para processar em lote
-        for (int i = 0; i < 100 && !transactionQueue.isEmpty(); i++) {
-            Transacao transacao = transactionQueue.poll();
-            if (transacao != null) {
-                batch.add(transacao);
-            }
-        }
+    /**
+     * Quantidade de transações aguardando a gravação assíncrona
+     * @return profundidade atual da fila
+     */
+    public int pendingCount() {
+        return batcher.depth();
+    }
 
-        if (batch.isEmpty()) {
-            return;
-        }
+    /**
+     * Maior quantidade de transações aguardando gravação desde a inicialização
+     * @return marca d'água da fila
+     */
+    public int pendingHighWatermark() {
+        return batcher.highWatermark();
+    }
 
-        // Processa o lote em uma única conexão
+    /**
+     * Obtém as últimas transações de um cliente
+     * @param clienteId ID do cliente
+     * @return Lista de transações
+     * @throws SQLException em caso de erro no banco de dados
+     */
+    public List<Transacao> getLatestTransactions(int clienteId) throws SQLException {
+        List<Transacao> transactions = new ArrayList<>();
         try (Connection conn = DatabaseConfig.getConnection()) {
-            conn.setAutoCommit(false);
-
-            try (PreparedStatement stmt = conn.prepareStatement(SQL_RECORD_TRANSACTION)) {
-                for (Transacao transacao : batch) {
-                    stmt.setInt(1, transacao.getClienteId());
-                    stmt.setInt(2, transacao.getValor());
-                    stmt.setString(3, transacao.getTipo());
-                    stmt.setString(4, transacao.getDescricao());
-                    stmt.addBatch();
-                }
-
-                stmt.executeBatch();
-                conn.commit();
-            } catch (SQLException e) {
-                conn.rollback();
-                System.err.println("Erro ao processar lote de transações: " + e.getMessage());
-                e.printStackTrace();
-
-                // Recoloca as transações na fila para tentar novamente
-                transactionQueue.addAll(batch);
+            if (slots) {
+                readTransactions(conn, sqlGetTransactions, clienteId, null, transactions);
+                return transactions;
             }
-        } catch (SQLException e) {
-            System.err.println("Erro de conexão ao processar lote: " + e.getMessage());
-            e.printStackTrace();
 
-            // Recoloca as transações na fila para tentar novamente
-            transactionQueue.addAll(batch);
+            // Quase sempre as 10 últimas estão na partição de hoje; só consulta as demais se faltar
+            readTransactions(conn, SQL_GET_TRANSACTIONS_CURRENT_PARTITION, clienteId,
+                    PartitionManager.currentPartitionStart(), transactions);
+            if (transactions.size() < 10) {
+                transactions.clear();
+                readTransactions(conn, sqlGetTransactions, clienteId, null, transactions);
+            }
         }
+        return transactions;
     }
 
     /**
-     * Obtém as últimas transações de um cliente
+     * Executa uma consulta de últimas transações e acrescenta o resultado à lista
+     * @param desde início da partição consultada, ou null para a consulta sem limite de data
+     */
+    private void readTransactions(Connection conn, String sql, int clienteId, OffsetDateTime desde,
+                                  List<Transacao> transactions) throws SQLException {
+        PreparedStatement stmt = StatementRegistry.prepare(conn, sql);
+        stmt.setInt(1, clienteId);
+        if (desde != null) {
+            stmt.setObject(2, desde);
+        }
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                Transacao transaction = new Transacao(
+                        clienteId,
+                        rs.getInt("valor"),
+                        rs.getString("tipo"),
+                        rs.getString("descricao"),
+                        convertTimestamp(rs.getTimestamp("realizada_em"))
+                );
+                transactions.add(transaction);
+            }
+        }
+    }
+
+    /**
+     * Obtém o extrato já serializado em JSON pelo banco, em uma única consulta
      * @param clienteId ID do cliente
-     * @return Lista de transações
+     * @return bytes UTF-8 do JSON do extrato, ou null se o cliente não existir
      * @throws SQLException em caso de erro no banco de dados
      */
-    public List<Transacao> getLatestTransactions(int clienteId) throws SQLException {
-        List<Transacao> transactions = new ArrayList<>();
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(SQL_GET_TRANSACTIONS)) {
+    public byte[] getExtratoJson(int clienteId) throws SQLException {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            PreparedStatement stmt = StatementRegistry.prepare(conn, sqlGetExtratoJson);
             stmt.setInt(1, clienteId);
             try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    Transacao transaction = new Transacao(
-                            clienteId,
-                            rs.getInt("valor"),
-                            rs.getString("tipo"),
-                            rs.getString("descricao"),
-                            convertTimestamp(rs.getTimestamp("realizada_em"))
-                    );
-                    transactions.add(transaction);
-                }
+                // getBytes devolve o texto como veio do servidor, sem decodificar para String
+                return rs.next() ? rs.getBytes(1) : null;
             }
         }
-        return transactions;
     }
 
     /**
@@ -186,12 +230,12 @@ public class TransacaoRepository {
      */
     public void saveWithConnection(Connection connection, int clienteId, String tipo, int valor, String descricao)
             throws SQLException {
-        try (PreparedStatement stmt = connection.prepareStatement(SQL_RECORD_TRANSACTION)) {
-            stmt.setInt(1, clienteId);
-            stmt.setInt(2, valor);
-            stmt.setString(3, tipo);
-            stmt.setString(4, descricao);
-            stmt.executeUpdate();
-        }
+        PreparedStatement stmt = StatementRegistry.prepare(connection, SQL_RECORD_TRANSACTION);
+        stmt.setInt(1, clienteId);
+        stmt.setInt(2, valor);
+        stmt.setString(3, tipo);
+        stmt.setString(4, descricao);
+        stmt.setObject(5, OffsetDateTime.now());
+        stmt.executeUpdate();
     }
 }
\ No newline at end of file
@@ -0,0 +1,222 @@
+package br.com.rinha.repository;
+
+import br.com.rinha.model.Transacao;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Buffer circular pré-alocado de transações pendentes (vários produtores, um consumidor)
+ * Cada posição guarda os campos em arrays primitivos, então enfileirar não aloca.
+ * O produtor reserva uma sequência, preenche a posição e a publica; o consumidor lê um lote
+ * contíguo de posições publicadas (peek) e só libera as posições depois de gravá-las (commit),
+ * então um lote que falhar é relido na mesma ordem.
+ *
+ * O chamador garante que nunca há mais de capacity() posições ocupadas (ver TransacaoBatcher).
+ */
+final class TransacaoRing {
+    // Descrição tem no máximo 10 caracteres UTF-16, ou seja, até 30 bytes em UTF-8
+    static final int MAX_DESCRICAO_BYTES = 32;
+
+    private final int mask;
+    private final int[] clienteIds;
+    private final int[] valores;
+    private final byte[] tipos;
+    private final long[] segundos;
+    private final int[] nanos;
+    private final byte[] descricoes;
+    private final byte[] descricaoLengths;
+
+    // Sequência publicada em cada posição; a posição está pronta quando published[i] == sequência esperada
+    private final AtomicLongArray published;
+
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong highWatermark = new AtomicLong();
+    private volatile long head;
+
+    /**
+     * @param minCapacity capacidade mínima; é arredondada para a próxima potência de 2
+     */
+    TransacaoRing(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, minCapacity) - 1) << 1;
+        this.mask = capacity - 1;
+        this.clienteIds = new int[capacity];
+        this.valores = new int[capacity];
+        this.tipos = new byte[capacity];
+        this.segundos = new long[capacity];
+        this.nanos = new int[capacity];
+        this.descricoes = new byte[capacity * MAX_DESCRICAO_BYTES];
+        this.descricaoLengths = new byte[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            // Nenhuma posição começa publicada
+            published.set(i, -1);
+        }
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Copia a transação para a próxima posição e a publica
+     * @param transacao transação a ser enfileirada
+     */
+    void offer(Transacao transacao) {
+        long sequence = tail.getAndIncrement();
+        int slot = (int) (sequence & mask);
+
+        clienteIds[slot] = transacao.getClienteId();
+        valores[slot] = transacao.getValor();
+        tipos[slot] = (byte) transacao.getTipo().charAt(0);
+        ZonedDateTime realizadaEm = transacao.getRealizadaEm();
+        segundos[slot] = realizadaEm.toEpochSecond();
+        nanos[slot] = realizadaEm.getNano();
+        descricaoLengths[slot] = (byte) encodeUtf8(transacao.getDescricao(), descricoes, slot * MAX_DESCRICAO_BYTES);
+
+        published.set(slot, sequence);
+
+        // Marca d'água: só escreve quando a profundidade supera o máximo já visto
+        long depth = sequence + 1 - head;
+        long max = highWatermark.get();
+        while (depth > max && !highWatermark.compareAndSet(max, depth)) {
+            max = highWatermark.get();
+        }
+    }
+
+    /**
+     * Conta quantas transações publicadas e contíguas estão disponíveis a partir do início (apenas o consumidor)
+     * @param max tamanho máximo do lote
+     * @return quantidade de transações disponíveis, lidas com index(0..n-1)
+     */
+    int peek(int max) {
+        long start = head;
+        int count = 0;
+        while (count < max && published.get((int) ((start + count) & mask)) == start + count) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Libera as primeiras transações depois de gravadas (apenas o consumidor)
+     * @param count quantidade de transações gravadas
+     */
+    void commit(int count) {
+        head = head + count;
+    }
+
+    /**
+     * Quantidade de transações enfileiradas e ainda não liberadas
+     * @return profundidade atual
+     */
+    long depth() {
+        return Math.max(0, tail.get() - head);
+    }
+
+    /**
+     * Total de sequências reservadas pelos produtores desde a inicialização
+     * @return próxima sequência a ser reservada
+     */
+    long reserved() {
+        return tail.get();
+    }
+
+    /**
+     * Total de transações liberadas pelo consumidor (já gravadas) desde a inicialização
+     * @return primeira sequência ainda não liberada
+     */
+    long released() {
+        return head;
+    }
+
+    /**
+     * Maior profundidade observada desde a inicialização
+     * @return marca d'água
+     */
+    long highWatermark() {
+        return highWatermark.get();
+    }
+
+    // Acesso às posições do lote atual: i varia de 0 a peek() - 1
+
+    int clienteId(int i) {
+        return clienteIds[slot(i)];
+    }
+
+    int valor(int i) {
+        return valores[slot(i)];
+    }
+
+    byte tipo(int i) {
+        return tipos[slot(i)];
+    }
+
+    long segundos(int i) {
+        return segundos[slot(i)];
+    }
+
+    int nanos(int i) {
+        return nanos[slot(i)];
+    }
+
+    int descricaoOffset(int i) {
+        return slot(i) * MAX_DESCRICAO_BYTES;
+    }
+
+    int descricaoLength(int i) {
+        return descricaoLengths[slot(i)];
+    }
+
+    byte[] descricoes() {
+        return descricoes;
+    }
+
+    /**
+     * Reconstrói a transação de uma posição do lote (caminho JDBC)
+     */
+    Transacao get(int i) {
+        int s = slot(i);
+        String descricao = new String(descricoes, s * MAX_DESCRICAO_BYTES, descricaoLengths[s], StandardCharsets.UTF_8);
+        Instant instante = Instant.ofEpochSecond(segundos[s], nanos[s]);
+        return new Transacao(clienteIds[s], valores[s], tipos[s] == 'c' ? "c" : "d", descricao,
+                ZonedDateTime.ofInstant(instante, ZoneOffset.UTC));
+    }
+
+    private int slot(int i) {
+        return (int) ((head + i) & mask);
+    }
+
+    /**
+     * Codifica em UTF-8 direto no buffer, sem alocar
+     * @return quantidade de bytes escritos
+     */
+    private static int encodeUtf8(String value, byte[] buf, int offset) {
+        int pos = offset;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return pos - offset;
+    }
+}
@@ -0,0 +1,287 @@
+package br.com.rinha.repository;
+
+import br.com.rinha.model.Transacao;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Log de escrita antecipada (WAL) das transações pendentes de gravação assíncrona
+ * Cada transação aceita é anexada a um segmento mapeado em memória antes da resposta;
+ * as páginas mapeadas pertencem ao kernel, então sobrevivem a um kill -9 ou OOM do processo.
+ * Um checkpoint guarda a última sequência confirmada no banco e os segmentos totalmente
+ * confirmados são apagados. Na inicialização, os registros após o checkpoint são recuperados.
+ *
+ * Não é thread-safe: as chamadas são serializadas pelo TransacaoBatcher.
+ */
+final class TransacaoWal {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    // Cabeçalho do registro: tamanho do payload (0 = fim do segmento) + CRC32C do payload
+    private static final int HEADER_SIZE = 8;
+
+    // sequência(8) + cliente(4) + valor(4) + tipo(1) + segundos(8) + nanos(4) + tamanho da descrição(1)
+    private static final int FIXED_PAYLOAD_SIZE = 30;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FileChannel lockChannel;
+    private final MappedByteBuffer checkpoint;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final byte[] scratch = new byte[FIXED_PAYLOAD_SIZE + 255];
+    private final CRC32C crc = new CRC32C();
+
+    private Segment active;
+    private long nextSequence;
+    private long committedSequence;
+
+    /**
+     * Segmento do log; apenas o ativo mantém o mapeamento para escrita
+     */
+    private static final class Segment {
+        private final Path path;
+        private final long firstSequence;
+        private long lastSequence;
+        private MappedByteBuffer buffer;
+
+        private Segment(Path path, long firstSequence) {
+            this.path = path;
+            this.firstSequence = firstSequence;
+            this.lastSequence = firstSequence - 1;
+        }
+    }
+
+    private TransacaoWal(Path directory, int segmentSize, FileChannel lockChannel, MappedByteBuffer checkpoint) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.lockChannel = lockChannel;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Abre o log no diretório, recuperando os registros ainda não confirmados
+     * @param directory diretório dos segmentos
+     * @param segmentSize tamanho de cada segmento em bytes
+     * @param recovered recebe, em ordem, as transações anexadas e não confirmadas antes do último encerramento
+     * @return log aberto
+     * @throws IOException se o diretório não puder ser usado ou já estiver em uso por outro processo
+     */
+    static TransacaoWal open(Path directory, int segmentSize, List<Transacao> recovered) throws IOException {
+        Files.createDirectories(directory);
+
+        // Impede que duas instâncias usem o mesmo diretório
+        FileChannel lockChannel = FileChannel.open(directory.resolve("lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = lockChannel.tryLock();
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Diretório do WAL em uso por outro processo: " + directory);
+        }
+
+        MappedByteBuffer checkpoint;
+        try (FileChannel channel = FileChannel.open(directory.resolve("checkpoint"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            checkpoint = channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        }
+
+        TransacaoWal wal = new TransacaoWal(directory, segmentSize, lockChannel, checkpoint);
+        wal.recover(recovered);
+        return wal;
+    }
+
+    /**
+     * Anexa uma transação ao segmento ativo
+     * @param transacao transação aceita
+     * @throws IOException se não for possível criar um novo segmento
+     */
+    void append(Transacao transacao) throws IOException {
+        int length = encode(transacao, nextSequence);
+        if (active == null || active.buffer.remaining() < HEADER_SIZE + length + 4) {
+            roll();
+        }
+
+        MappedByteBuffer buffer = active.buffer;
+        int position = buffer.position();
+
+        // Payload e CRC antes do tamanho: um registro com tamanho gravado está completo
+        buffer.put(position + HEADER_SIZE, scratch, 0, length);
+        crc.reset();
+        crc.update(scratch, 0, length);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, length);
+        buffer.position(position + HEADER_SIZE + length);
+
+        active.lastSequence = nextSequence++;
+    }
+
+    /**
+     * Marca as próximas transações do log como confirmadas no banco
+     * @param count quantidade de transações confirmadas, na ordem em que foram anexadas
+     */
+    void commit(int count) {
+        committedSequence += count;
+        checkpoint.putLong(0, committedSequence);
+
+        // Apaga os segmentos antigos cujos registros já estão todos no banco
+        while (segments.size() > 1 && segments.peekFirst().lastSequence < committedSequence) {
+            delete(segments.pollFirst());
+        }
+    }
+
+    /**
+     * Libera o lock do diretório; os segmentos ficam em disco para a próxima inicialização
+     */
+    void close() {
+        try {
+            lockChannel.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar o WAL: " + e.getMessage());
+        }
+    }
+
+    private void recover(List<Transacao> recovered) throws IOException {
+        committedSequence = checkpoint.getLong(0);
+        nextSequence = committedSequence;
+
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        // O nome contém a primeira sequência com zeros à esquerda, então a ordem lexicográfica é a do log
+        paths.sort(null);
+
+        for (Path path : paths) {
+            Segment segment = new Segment(path, parseFirstSequence(path));
+            byte[] content = Files.readAllBytes(path);
+            int position = 0;
+            while (position + HEADER_SIZE <= content.length) {
+                int length = readInt(content, position);
+                if (length <= 0 || position + HEADER_SIZE + length > content.length) {
+                    break;
+                }
+                crc.reset();
+                crc.update(content, position + HEADER_SIZE, length);
+                if ((int) crc.getValue() != readInt(content, position + 4)) {
+                    // Registro incompleto: o processo morreu no meio da escrita
+                    break;
+                }
+
+                long sequence = readLong(content, position + HEADER_SIZE);
+                if (sequence >= committedSequence) {
+                    recovered.add(decode(content, position + HEADER_SIZE));
+                }
+                segment.lastSequence = sequence;
+                nextSequence = Math.max(nextSequence, sequence + 1);
+                position += HEADER_SIZE + length;
+            }
+            segments.addLast(segment);
+        }
+
+        // Registros anteriores ao checkpoint que sobraram em disco não voltam; os demais serão reenviados
+        committedSequence = nextSequence - recovered.size();
+        checkpoint.putLong(0, committedSequence);
+        segments.removeIf(segment -> {
+            boolean obsolete = segment.lastSequence < committedSequence || segment.lastSequence < segment.firstSequence;
+            if (obsolete) {
+                delete(segment);
+            }
+            return obsolete;
+        });
+    }
+
+    private void roll() throws IOException {
+        if (active != null) {
+            // Marca o fim do segmento e solta o mapeamento de escrita
+            active.buffer.putInt(active.buffer.position(), 0);
+            active.buffer = null;
+        }
+
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX));
+        Segment segment = new Segment(path, nextSequence);
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segments.addLast(segment);
+        active = segment;
+    }
+
+    private void delete(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            System.err.println("Erro ao apagar segmento do WAL " + segment.path + ": " + e.getMessage());
+        }
+        if (segment == active) {
+            active = null;
+        }
+    }
+
+    private int encode(Transacao transacao, long sequence) {
+        byte[] descricao = transacao.getDescricao().getBytes(StandardCharsets.UTF_8);
+        ZonedDateTime realizadaEm = transacao.getRealizadaEm();
+
+        writeLong(scratch, 0, sequence);
+        writeInt(scratch, 8, transacao.getClienteId());
+        writeInt(scratch, 12, transacao.getValor());
+        scratch[16] = (byte) transacao.getTipo().charAt(0);
+        writeLong(scratch, 17, realizadaEm.toEpochSecond());
+        writeInt(scratch, 25, realizadaEm.getNano());
+        scratch[29] = (byte) descricao.length;
+        System.arraycopy(descricao, 0, scratch, FIXED_PAYLOAD_SIZE, descricao.length);
+        return FIXED_PAYLOAD_SIZE + descricao.length;
+    }
+
+    private static Transacao decode(byte[] content, int offset) {
+        int clienteId = readInt(content, offset + 8);
+        int valor = readInt(content, offset + 12);
+        String tipo = content[offset + 16] == 'c' ? "c" : "d";
+        Instant instante = Instant.ofEpochSecond(readLong(content, offset + 17), readInt(content, offset + 25));
+        int descricaoLength = content[offset + 29] & 0xFF;
+        String descricao = new String(content, offset + FIXED_PAYLOAD_SIZE, descricaoLength, StandardCharsets.UTF_8);
+        return new Transacao(clienteId, valor, tipo, descricao, ZonedDateTime.ofInstant(instante, ZoneOffset.UTC));
+    }
+
+    private static long parseFirstSequence(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        writeInt(bytes, offset, (int) (value >>> 32));
+        writeInt(bytes, offset + 4, (int) value);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        return ((long) readInt(bytes, offset) << 32) | (readInt(bytes, offset + 4) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,177 @@
+package br.com.rinha.repository;
+
+import br.com.rinha.model.Transacao;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Anel em memória com as últimas transações de cada cliente
+ * Mantido no caminho de escrita (após o commit do saldo) e lido pelo extrato sem ir ao banco.
+ * Cada anel é carregado do banco uma única vez, no primeiro acesso ao cliente, depois que a fila
+ * assíncrona (WRITE_MODE=async, inclusive o recuperado do WAL) foi gravada; uma transação que
+ * já veio do banco e é registrada em seguida não é repetida.
+ */
+public class TransacoesRecentes {
+    // Quantidade de transações exibidas no extrato
+    public static final int CAPACIDADE = 10;
+
+    private static final ConcurrentHashMap<Integer, Anel> aneis = new ConcurrentHashMap<>();
+
+    /**
+     * Registra uma transação confirmada no anel do cliente
+     * @param transacao transação confirmada
+     * @param repository repositório usado para carregar o anel se ainda não estiver em memória
+     * @throws SQLException em caso de erro ao carregar o anel
+     */
+    public static void registrar(Transacao transacao, TransacaoRepository repository) throws SQLException {
+        Anel anel = obterAnel(transacao.getClienteId());
+        anel.lock.lock();
+        try {
+            anel.carregar(transacao.getClienteId(), repository);
+            anel.adicionar(transacao);
+        } finally {
+            anel.lock.unlock();
+        }
+    }
+
+    /**
+     * Obtém as últimas transações do cliente, da mais recente para a mais antiga
+     * @param clienteId ID do cliente
+     * @param repository repositório usado para carregar o anel se ainda não estiver em memória
+     * @return lista com até CAPACIDADE transações
+     * @throws SQLException em caso de erro ao carregar o anel
+     */
+    public static List<Transacao> obter(int clienteId, TransacaoRepository repository) throws SQLException {
+        Anel anel = obterAnel(clienteId);
+        anel.lock.lock();
+        try {
+            anel.carregar(clienteId, repository);
+            return anel.listar(clienteId);
+        } finally {
+            anel.lock.unlock();
+        }
+    }
+
+    /**
+     * Descarta os anéis em memória; serão recarregados do banco no próximo acesso
+     */
+    public static void limpar() {
+        aneis.clear();
+    }
+
+    private static Anel obterAnel(int clienteId) {
+        Anel anel = aneis.get(clienteId);
+        return anel != null ? anel : aneis.computeIfAbsent(clienteId, k -> new Anel());
+    }
+
+    /**
+     * Anel de tamanho fixo com campos primitivos; a posição "inicio" guarda a transação mais recente.
+     * Usa ReentrantLock porque a carga inicial faz I/O e não deve prender a carrier thread.
+     */
+    private static final class Anel {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int[] valores = new int[CAPACIDADE];
+        private final String[] tipos = new String[CAPACIDADE];
+        private final String[] descricoes = new String[CAPACIDADE];
+        private final long[] realizadaEmMicros = new long[CAPACIDADE];
+        private int inicio;
+        private int tamanho;
+        private boolean carregado;
+
+        /**
+         * Carrega o anel do banco se ainda não foi carregado (lock já adquirido)
+         */
+        void carregar(int clienteId, TransacaoRepository repository) throws SQLException {
+            if (carregado) {
+                return;
+            }
+            // Sem a barreira, transações ainda na fila assíncrona ficariam de fora do anel para sempre
+            repository.awaitPendingWrites();
+            List<Transacao> doBanco = repository.getLatestTransactions(clienteId);
+            // Insere da mais antiga para a mais recente
+            for (int i = doBanco.size() - 1; i >= 0; i--) {
+                adicionar(doBanco.get(i));
+            }
+            carregado = true;
+        }
+
+        /**
+         * Adiciona uma transação mantendo a ordem por data, descartando a mais antiga se cheio
+         */
+        void adicionar(Transacao transacao) {
+            long micros = toMicros(transacao.getRealizadaEm());
+            if (contem(transacao, micros)) {
+                // Já veio na carga do banco (confirmada antes do registro)
+                return;
+            }
+
+            // Avança o início (sobrescreve a mais antiga quando o anel está cheio)
+            inicio = (inicio + CAPACIDADE - 1) % CAPACIDADE;
+            if (tamanho < CAPACIDADE) {
+                tamanho++;
+            }
+
+            // Transações confirmadas quase sempre chegam em ordem; se não, desloca até a posição correta
+            int pos = 0;
+            while (pos + 1 < tamanho && realizadaEmMicros[slot(pos + 1)] > micros) {
+                copiar(slot(pos + 1), slot(pos));
+                pos++;
+            }
+
+            int s = slot(pos);
+            valores[s] = transacao.getValor();
+            tipos[s] = transacao.getTipo();
+            descricoes[s] = transacao.getDescricao();
+            realizadaEmMicros[s] = micros;
+        }
+
+        List<Transacao> listar(int clienteId) {
+            List<Transacao> transacoes = new ArrayList<>(tamanho);
+            for (int i = 0; i < tamanho; i++) {
+                int s = slot(i);
+                long micros = realizadaEmMicros[s];
+                Instant instante = Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                        Math.floorMod(micros, 1_000_000L) * 1000L);
+                transacoes.add(new Transacao(clienteId, valores[s], tipos[s], descricoes[s],
+                        ZonedDateTime.ofInstant(instante, ZoneOffset.UTC)));
+            }
+            return transacoes;
+        }
+
+        /**
+         * Procura a mesma transação (cliente, data, valor, tipo e descrição, como na recuperação do WAL)
+         */
+        private boolean contem(Transacao transacao, long micros) {
+            for (int i = 0; i < tamanho; i++) {
+                int s = slot(i);
+                if (realizadaEmMicros[s] == micros && valores[s] == transacao.getValor()
+                        && tipos[s].equals(transacao.getTipo()) && descricoes[s].equals(transacao.getDescricao())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int slot(int posicao) {
+            return (inicio + posicao) % CAPACIDADE;
+        }
+
+        private void copiar(int origem, int destino) {
+            valores[destino] = valores[origem];
+            tipos[destino] = tipos[origem];
+            descricoes[destino] = descricoes[origem];
+            realizadaEmMicros[destino] = realizadaEmMicros[origem];
+        }
+
+        private static long toMicros(ZonedDateTime dateTime) {
+            return dateTime.toEpochSecond() * 1_000_000L + dateTime.getNano() / 1000;
+        }
+    }
+}
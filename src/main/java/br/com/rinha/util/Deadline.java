@@ -0,0 +1,187 @@
+package br.com.rinha.util;
+
+import br.com.rinha.metrics.Metrics;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prazo da requisição em andamento, definido no despacho e visível em toda a pilha de chamadas
+ * O prazo fica em um ScopedValue: não precisa ser passado como parâmetro, some ao fim da requisição
+ * e não vaza entre as virtual threads. Fora de uma requisição (warmup, threads de fundo) não há prazo.
+ *
+ * Lock do cliente, espera pelo pool, timeout dos comandos SQL e espera entre tentativas usam o
+ * tempo restante; trabalho que já não cabe no prazo é abandonado com SQLTimeoutException.
+ */
+public final class Deadline {
+    private static final ScopedValue<Deadline> CURRENT = ScopedValue.newInstance();
+
+    // Operações abandonadas por falta de prazo
+    private static final LongAdder exceeded = Metrics.counter("deadline_exceeded");
+
+    private final long deadlineNanos;
+
+    /**
+     * Trecho executado com um prazo
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run() throws IOException;
+    }
+
+    /**
+     * Operação no banco executada com um prazo levado de outra thread
+     * @param <T> tipo do resultado
+     */
+    @FunctionalInterface
+    public interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Executa o trecho com prazo de budgetNanos a partir de agora
+     * @param budgetNanos tempo disponível para a requisição
+     * @param task trecho a executar
+     * @throws IOException em caso de erro de I/O no trecho
+     */
+    public static void run(long budgetNanos, Task task) throws IOException {
+        try {
+            ScopedValue.where(CURRENT, new Deadline(System.nanoTime() + budgetNanos)).call(() -> {
+                task.run();
+                return null;
+            });
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // Task só lança IOException; call() declara Exception
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Executa a operação com o prazo informado (virtual threads iniciadas pela requisição não herdam o ScopedValue)
+     * @param deadline prazo obtido com current(), ou null para executar sem prazo
+     * @param call operação a executar
+     * @param <T> tipo do resultado
+     * @return resultado da operação
+     * @throws SQLException em caso de erro no banco de dados ou prazo esgotado
+     */
+    public static <T> T callWithin(Deadline deadline, SqlCall<T> call) throws SQLException {
+        if (deadline == null) {
+            return call.call();
+        }
+        try {
+            return ScopedValue.where(CURRENT, deadline).call(call::call);
+        } catch (SQLException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // SqlCall só lança SQLException; call() declara Exception
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Prazo da requisição em andamento, para ser levado a outra thread
+     * @return prazo atual, ou null fora de uma requisição
+     */
+    public static Deadline current() {
+        return CURRENT.isBound() ? CURRENT.get() : null;
+    }
+
+    /**
+     * O prazo que acaba primeiro
+     * @param a prazo (null = sem prazo)
+     * @param b prazo (null = sem prazo)
+     * @return o mais curto dos dois, ou null se nenhum tem prazo
+     */
+    public static Deadline earliest(Deadline a, Deadline b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.deadlineNanos - b.deadlineNanos <= 0 ? a : b;
+    }
+
+    /**
+     * Verifica se este prazo já acabou
+     * @return true se o prazo esgotou
+     */
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Tempo restante até o prazo da requisição
+     * @return nanossegundos restantes (negativo se esgotado), ou Long.MAX_VALUE fora de uma requisição
+     */
+    public static long remainingNanos() {
+        if (!CURRENT.isBound()) {
+            return Long.MAX_VALUE;
+        }
+        return CURRENT.get().deadlineNanos - System.nanoTime();
+    }
+
+    /**
+     * Instante limite para uma espera com timeout próprio: o que vier primeiro
+     * @param timeoutNanos timeout da operação
+     * @return instante limite, na escala de System.nanoTime()
+     */
+    public static long limitNanos(long timeoutNanos) {
+        long now = System.nanoTime();
+        long limit = now + timeoutNanos;
+        if (CURRENT.isBound() && CURRENT.get().deadlineNanos - limit < 0) {
+            return CURRENT.get().deadlineNanos;
+        }
+        return limit;
+    }
+
+    /**
+     * Timeout para Statement.setQueryTimeout, só quando o prazo é mais curto que o limite já em vigor
+     * O JDBC só aceita segundos inteiros: o valor é arredondado para baixo para não passar do prazo,
+     * mas nunca fica abaixo de 1s (com menos de 1s restante o comando pode exceder o prazo em até 1s).
+     * Sem timeout o pgjdbc também não agenda o cancelamento de cada execução.
+     * @param limitSeconds limite que já vale sem timeout (ex.: socketTimeout da conexão)
+     * @return segundos restantes, ou 0 (sem timeout) fora de uma requisição ou com prazo a partir do limite
+     */
+    public static int queryTimeoutSeconds(int limitSeconds) {
+        long remaining = remainingNanos();
+        if (remaining == Long.MAX_VALUE) {
+            return 0;
+        }
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(remaining);
+        if (seconds >= limitSeconds) {
+            return 0;
+        }
+        return (int) Math.max(1, seconds);
+    }
+
+    /**
+     * Abandona a operação se o prazo da requisição já acabou
+     * @param operation descrição da operação (para a mensagem de erro)
+     * @throws SQLTimeoutException se o prazo esgotou
+     */
+    public static void check(String operation) throws SQLTimeoutException {
+        if (remainingNanos() <= 0) {
+            throw expired(operation);
+        }
+    }
+
+    /**
+     * Exceção para uma operação que não cabe mais no prazo
+     * @param operation descrição da operação
+     * @return exceção a ser lançada pelo chamador
+     */
+    public static SQLTimeoutException expired(String operation) {
+        exceeded.increment();
+        return new SQLTimeoutException("Prazo da requisição esgotado: " + operation);
+    }
+}
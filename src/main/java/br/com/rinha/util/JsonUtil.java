@@ -1,74 +1,102 @@
 package br.com.rinha.util;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import br.com.rinha.model.Cliente;
 import br.com.rinha.model.Transacao;
 
-import java.time.format.DateTimeFormatter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.List;
 
 /**
  * Utilitário para manipulação de JSON
+ * As respostas são montadas por templates pré-codificados preenchidos pelo JsonWriter
  */
 public class JsonUtil {
     private static final ObjectMapper objectMapper = new ObjectMapper();
-    private static final DateTimeFormatter ISO_FORMATTER =
-            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSS'Z'");
+
+    // Templates da resposta de transação
+    private static final byte[] TRANSACTION_LIMITE = ascii("{\"limite\":");
+    private static final byte[] TRANSACTION_SALDO = ascii(",\"saldo\":");
+
+    // Templates da resposta de extrato
+    private static final byte[] EXTRACT_TOTAL = ascii("{\"saldo\":{\"total\":");
+    private static final byte[] EXTRACT_LIMITE = ascii(",\"limite\":");
+    private static final byte[] EXTRACT_DATA = ascii(",\"data_extrato\":");
+    private static final byte[] EXTRACT_TRANSACTIONS = ascii("},\"ultimas_transacoes\":[");
+    private static final byte[] TRANSACTION_VALOR = ascii("{\"valor\":");
+    private static final byte[] TRANSACTION_TIPO = ascii(",\"tipo\":");
+    private static final byte[] TRANSACTION_DESCRICAO = ascii(",\"descricao\":");
+    private static final byte[] TRANSACTION_REALIZADA_EM = ascii(",\"realizada_em\":");
+    private static final byte[] SEPARATOR = ascii(",");
+    private static final byte[] OBJECT_END = ascii("}");
+    private static final byte[] EXTRACT_END = ascii("]}");
 
     /**
-     * Cria um JSON de resposta para uma transação
+     * Cria o JSON de resposta para uma transação
      * @param limite Limite do cliente
      * @param saldo Saldo atual do cliente
-     * @return ObjectNode com os dados formatados
+     * @return bytes do JSON
      */
-    public static ObjectNode createTransactionResponse(int limite, int saldo) {
-        ObjectNode response = objectMapper.createObjectNode();
-        response.put("limite", limite);
-        response.put("saldo", saldo);
-        return response;
+    public static byte[] createTransactionResponse(int limite, int saldo) {
+        JsonWriter writer = JsonWriter.acquire();
+        try {
+            writer.raw(TRANSACTION_LIMITE).writeInt(limite)
+                    .raw(TRANSACTION_SALDO).writeInt(saldo)
+                    .raw(OBJECT_END);
+            return writer.toByteArray();
+        } finally {
+            writer.release();
+        }
     }
 
     /**
-     * Cria um JSON de resposta para um extrato
+     * Cria o JSON de resposta para um extrato
      * @param cliente Cliente do extrato
      * @param transacoes Lista de transações
-     * @return ObjectNode com os dados formatados
+     * @return bytes do JSON
      */
-    public static ObjectNode createExtractResponse(Cliente cliente, List<Transacao> transacoes) {
-        ObjectNode response = objectMapper.createObjectNode();
-
-        // Add balance information
-        ObjectNode balanceInfo = response.putObject("saldo");
-        balanceInfo.put("total", cliente.getSaldo());
-        balanceInfo.put("limite", cliente.getLimite());
+    public static byte[] createExtractResponse(Cliente cliente, List<Transacao> transacoes) {
+        JsonWriter writer = JsonWriter.acquire();
+        try {
+            // Informações de saldo
+            Instant now = Instant.now();
+            writer.raw(EXTRACT_TOTAL).writeInt(cliente.getSaldo())
+                    .raw(EXTRACT_LIMITE).writeInt(cliente.getLimite())
+                    .raw(EXTRACT_DATA).writeTimestamp(now.getEpochSecond(), now.getNano())
+                    .raw(EXTRACT_TRANSACTIONS);
 
-        // Format current datetime in ISO format
-        ZonedDateTime now = ZonedDateTime.now();
-        balanceInfo.put("data_extrato", formatDateTime(now));
+            // Transações
+            for (int i = 0; i < transacoes.size(); i++) {
+                Transacao t = transacoes.get(i);
+                if (i > 0) {
+                    writer.raw(SEPARATOR);
+                }
+                ZonedDateTime realizadaEm = t.getRealizadaEm();
+                writer.raw(TRANSACTION_VALOR).writeInt(t.getValor())
+                        .raw(TRANSACTION_TIPO).writeString(t.getTipo())
+                        .raw(TRANSACTION_DESCRICAO).writeString(t.getDescricao())
+                        .raw(TRANSACTION_REALIZADA_EM).writeTimestamp(realizadaEm.toEpochSecond(), realizadaEm.getNano())
+                        .raw(OBJECT_END);
+            }
 
-        // Add transactions
-        ArrayNode transactionsArray = response.putArray("ultimas_transacoes");
-        for (Transacao t : transacoes) {
-            ObjectNode transactionNode = transactionsArray.addObject();
-            transactionNode.put("valor", t.getValor());
-            transactionNode.put("tipo", t.getTipo());
-            transactionNode.put("descricao", t.getDescricao());
-            transactionNode.put("realizada_em", formatDateTime(t.getRealizadaEm()));
+            writer.raw(EXTRACT_END);
+            return writer.toByteArray();
+        } finally {
+            writer.release();
         }
-
-        return response;
     }
 
     /**
-     * Formata um ZonedDateTime para o formato ISO
+     * Formata um ZonedDateTime para o formato ISO (UTC, microssegundos)
      * @param dateTime Data e hora a ser formatada
      * @return String formatada
      */
     public static String formatDateTime(ZonedDateTime dateTime) {
-        return dateTime.format(ISO_FORMATTER);
+        byte[] bytes = new byte[TimestampFormatter.LENGTH];
+        TimestampFormatter.write(bytes, 0, dateTime.toEpochSecond(), dateTime.getNano());
+        return new String(bytes, StandardCharsets.US_ASCII);
     }
 
     /**
@@ -78,4 +106,8 @@ public class JsonUtil {
     public static ObjectMapper getObjectMapper() {
         return objectMapper;
     }
-}
\ No newline at end of file
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,190 @@
+package br.com.rinha.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Escritor de JSON direto em bytes para respostas com formato fixo
+ * Os trechos constantes são pré-codificados pelo chamador; o escritor só preenche
+ * inteiros, strings escapadas e timestamps. As instâncias vêm de um pool sem alocação,
+ * então montar uma resposta aloca apenas o array final.
+ */
+public final class JsonWriter {
+    private static final int INITIAL_CAPACITY = 2048;
+
+    // Buffers que cresceram além disso não voltam ao pool
+    private static final int MAX_POOLED_CAPACITY = 16384;
+
+    // Pool de escritores reutilizáveis (potência de 2)
+    private static final int POOL_SIZE = 64;
+    private static final AtomicReferenceArray<JsonWriter> pool = new AtomicReferenceArray<>(POOL_SIZE);
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buffer;
+    private int size;
+
+    private JsonWriter(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * Obtém um escritor vazio do pool (ou cria um novo se o pool estiver vazio)
+     * @return escritor pronto para uso
+     */
+    public static JsonWriter acquire() {
+        int start = (int) Thread.currentThread().threadId();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            int slot = (start + i) & (POOL_SIZE - 1);
+            JsonWriter writer = pool.get(slot);
+            if (writer != null && pool.compareAndSet(slot, writer, null)) {
+                writer.size = 0;
+                return writer;
+            }
+        }
+        return new JsonWriter(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Devolve o escritor ao pool; não deve ser usado depois disso
+     */
+    public void release() {
+        if (buffer.length > MAX_POOLED_CAPACITY) {
+            return;
+        }
+        int start = (int) Thread.currentThread().threadId();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            int slot = (start + i) & (POOL_SIZE - 1);
+            if (pool.get(slot) == null && pool.compareAndSet(slot, null, this)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Escreve bytes pré-codificados
+     * @param bytes trecho constante do template
+     * @return o próprio escritor
+     */
+    public JsonWriter raw(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+        return this;
+    }
+
+    /**
+     * Escreve um inteiro em decimal
+     * @param value valor
+     * @return o próprio escritor
+     */
+    public JsonWriter writeInt(int value) {
+        ensureCapacity(11);
+        long v = value;
+        if (v < 0) {
+            buffer[size++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) {
+            digits++;
+        }
+        for (int i = size + digits - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        size += digits;
+        return this;
+    }
+
+    /**
+     * Escreve uma string entre aspas, escapada e codificada em UTF-8
+     * @param value texto
+     * @return o próprio escritor
+     */
+    public JsonWriter writeString(String value) {
+        // Pior caso: \\uXXXX (6 bytes) por caractere, mais as aspas
+        ensureCapacity(value.length() * 6 + 2);
+        byte[] buf = buffer;
+        int pos = size;
+        buf[pos++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buf[pos++] = '\\';
+                buf[pos++] = (byte) c;
+            } else if (c < 0x20) {
+                buf[pos++] = '\\';
+                buf[pos++] = 'u';
+                buf[pos++] = '0';
+                buf[pos++] = '0';
+                buf[pos++] = HEX[c >> 4];
+                buf[pos++] = HEX[c & 0xF];
+            } else if (c < 0x80) {
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buf[pos++] = '"';
+        size = pos;
+        return this;
+    }
+
+    /**
+     * Escreve um timestamp entre aspas no formato ISO (UTC, microssegundos)
+     * @param epochSecond segundos desde a época
+     * @param nano nanossegundos dentro do segundo
+     * @return o próprio escritor
+     */
+    public JsonWriter writeTimestamp(long epochSecond, int nano) {
+        ensureCapacity(TimestampFormatter.LENGTH + 2);
+        buffer[size++] = '"';
+        size = TimestampFormatter.write(buffer, size, epochSecond, nano);
+        buffer[size++] = '"';
+        return this;
+    }
+
+    /**
+     * Copia o conteúdo escrito para um novo array
+     * @return bytes do JSON
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Buffer interno (válido até a próxima escrita ou release)
+     * @return buffer com o JSON nas posições [0, size())
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Quantidade de bytes escritos
+     * @return tamanho do JSON
+     */
+    public int size() {
+        return size;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
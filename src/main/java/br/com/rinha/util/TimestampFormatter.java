@@ -0,0 +1,101 @@
+package br.com.rinha.util;
+
+/**
+ * Formata instantes no padrão yyyy-MM-dd'T'HH:mm:ss.SSSSSS'Z' (UTC) direto em bytes
+ * O prefixo de cada segundo ("yyyy-MM-ddTHH:mm:ss") é calculado uma vez e guardado em cache,
+ * então formatar um instante se resume a copiar o prefixo e escrever os microssegundos.
+ */
+public final class TimestampFormatter {
+    // Tamanho do texto formatado
+    public static final int LENGTH = 27;
+
+    private static final int PREFIX_LENGTH = 19;
+
+    // Cache de prefixos mapeado diretamente pelo segundo (potência de 2)
+    private static final int CACHE_SIZE = 64;
+    private static final Prefix[] CACHE = new Prefix[CACHE_SIZE];
+
+    /**
+     * Prefixo imutável de um segundo; campos final garantem publicação segura sem lock
+     */
+    private static final class Prefix {
+        private final long epochSecond;
+        private final byte[] bytes;
+
+        private Prefix(long epochSecond, byte[] bytes) {
+            this.epochSecond = epochSecond;
+            this.bytes = bytes;
+        }
+    }
+
+    private TimestampFormatter() {
+    }
+
+    /**
+     * Escreve o instante formatado no buffer
+     * @param buffer buffer de destino com pelo menos LENGTH bytes livres a partir de pos
+     * @param pos posição inicial
+     * @param epochSecond segundos desde a época (UTC)
+     * @param nano nanossegundos dentro do segundo
+     * @return posição após o texto escrito
+     */
+    public static int write(byte[] buffer, int pos, long epochSecond, int nano) {
+        int slot = (int) (epochSecond & (CACHE_SIZE - 1));
+        Prefix prefix = CACHE[slot];
+        if (prefix == null || prefix.epochSecond != epochSecond) {
+            prefix = new Prefix(epochSecond, formatPrefix(epochSecond));
+            CACHE[slot] = prefix;
+        }
+        System.arraycopy(prefix.bytes, 0, buffer, pos, PREFIX_LENGTH);
+        pos += PREFIX_LENGTH;
+
+        buffer[pos++] = '.';
+        int micros = nano / 1000;
+        for (int i = 5; i >= 0; i--) {
+            buffer[pos + i] = (byte) ('0' + micros % 10);
+            micros /= 10;
+        }
+        pos += 6;
+        buffer[pos++] = 'Z';
+        return pos;
+    }
+
+    /**
+     * Calcula "yyyy-MM-ddTHH:mm:ss" sem usar java.time (algoritmo civil_from_days)
+     */
+    private static byte[] formatPrefix(long epochSecond) {
+        long days = Math.floorDiv(epochSecond, 86400);
+        int secondOfDay = Math.floorMod(epochSecond, 86400);
+
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        byte[] bytes = new byte[PREFIX_LENGTH];
+        writeDigits(bytes, 0, year, 4);
+        bytes[4] = '-';
+        writeDigits(bytes, 5, month, 2);
+        bytes[7] = '-';
+        writeDigits(bytes, 8, day, 2);
+        bytes[10] = 'T';
+        writeDigits(bytes, 11, secondOfDay / 3600, 2);
+        bytes[13] = ':';
+        writeDigits(bytes, 14, secondOfDay / 60 % 60, 2);
+        bytes[16] = ':';
+        writeDigits(bytes, 17, secondOfDay % 60, 2);
+        return bytes;
+    }
+
+    private static void writeDigits(byte[] buffer, int pos, int value, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            buffer[pos + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
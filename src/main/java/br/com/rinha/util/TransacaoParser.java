@@ -0,0 +1,396 @@
+package br.com.rinha.util;
+
+/**
+ * Parser em passada única do corpo de uma transação ({"valor", "tipo", "descricao"})
+ * Valida enquanto lê os bytes, sem montar árvore JSON: rejeita valor não inteiro ou não positivo,
+ * tipo diferente de "c"/"d", descrição fora de 1..10 caracteres e campos nulos ou ausentes.
+ * Campos desconhecidos são ignorados. Cada instância atende uma requisição.
+ */
+public final class TransacaoParser {
+    // Tamanho máximo da descrição em caracteres
+    private static final int MAX_DESCRICAO = 10;
+
+    // Profundidade máxima de objetos/arrays aninhados em campos ignorados
+    private static final int MAX_DEPTH = 16;
+
+    private static final byte[] KEY_VALOR = {'v', 'a', 'l', 'o', 'r'};
+    private static final byte[] KEY_TIPO = {'t', 'i', 'p', 'o'};
+    private static final byte[] KEY_DESCRICAO = {'d', 'e', 's', 'c', 'r', 'i', 'c', 'a', 'o'};
+
+    private byte[] buffer;
+    private int pos;
+    private int end;
+
+    // Caracteres decodificados da última string lida
+    private final char[] chars = new char[MAX_DESCRICAO];
+    private int charCount;
+
+    private int valor;
+    private String tipo;
+    private String descricao;
+
+    /**
+     * Analisa e valida o corpo da requisição
+     * @param buffer buffer com o corpo
+     * @param offset posição inicial do corpo
+     * @param length tamanho do corpo
+     * @return true se o corpo é uma transação válida
+     */
+    public boolean parse(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.pos = offset;
+        this.end = offset + length;
+        this.valor = 0;
+        this.tipo = null;
+        this.descricao = null;
+
+        skipWhitespace();
+        if (!consume('{')) {
+            return false;
+        }
+        skipWhitespace();
+        if (!consume('}')) {
+            do {
+                skipWhitespace();
+                if (!parseMember()) {
+                    return false;
+                }
+                skipWhitespace();
+            } while (consume(','));
+
+            if (!consume('}')) {
+                return false;
+            }
+        }
+
+        // Nada além de espaços após o objeto
+        skipWhitespace();
+        return pos == end && valor > 0 && tipo != null && descricao != null;
+    }
+
+    /**
+     * Lê um par "chave": valor, validando os campos conhecidos
+     */
+    private boolean parseMember() {
+        if (!consume('"')) {
+            return false;
+        }
+        int keyStart = pos;
+        int keyEnd = skipStringBody();
+        if (keyEnd < 0) {
+            return false;
+        }
+
+        skipWhitespace();
+        if (!consume(':')) {
+            return false;
+        }
+        skipWhitespace();
+
+        if (keyEquals(keyStart, keyEnd, KEY_VALOR)) {
+            return parseValor();
+        }
+        if (keyEquals(keyStart, keyEnd, KEY_TIPO)) {
+            if (!parseString(1) || charCount != 1) {
+                return false;
+            }
+            if (chars[0] == 'c') {
+                tipo = "c";
+            } else if (chars[0] == 'd') {
+                tipo = "d";
+            } else {
+                return false;
+            }
+            return true;
+        }
+        if (keyEquals(keyStart, keyEnd, KEY_DESCRICAO)) {
+            if (!parseString(MAX_DESCRICAO) || charCount == 0) {
+                return false;
+            }
+            descricao = new String(chars, 0, charCount);
+            return true;
+        }
+        return skipValue(0);
+    }
+
+    /**
+     * Lê o valor como inteiro positivo sem parte fracionária nem expoente
+     */
+    private boolean parseValor() {
+        int start = pos;
+        long value = 0;
+        while (pos < end) {
+            int digit = buffer[pos] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE) {
+                return false;
+            }
+            pos++;
+        }
+
+        int digits = pos - start;
+        if (digits == 0 || (digits > 1 && buffer[start] == '0')) {
+            // Sem dígitos (string, null, negativo...) ou com zeros à esquerda
+            return false;
+        }
+        if (pos < end && (buffer[pos] == '.' || buffer[pos] == 'e' || buffer[pos] == 'E')) {
+            // Valor decimal
+            return false;
+        }
+        if (value == 0) {
+            return false;
+        }
+        valor = (int) value;
+        return true;
+    }
+
+    /**
+     * Decodifica uma string JSON para o buffer de caracteres
+     * @param maxChars número máximo de caracteres aceitos
+     * @return false se não for string, for inválida ou exceder o tamanho
+     */
+    private boolean parseString(int maxChars) {
+        if (!consume('"')) {
+            return false;
+        }
+        charCount = 0;
+        while (pos < end) {
+            int b = buffer[pos++] & 0xFF;
+            if (b == '"') {
+                return true;
+            }
+
+            int c;
+            if (b == '\\') {
+                c = parseEscape();
+            } else if (b < 0x20) {
+                return false;
+            } else if (b < 0x80) {
+                c = b;
+            } else {
+                c = parseUtf8(b);
+            }
+            if (c < 0) {
+                return false;
+            }
+
+            // Conta em unidades UTF-16, como String.length()
+            int units = Character.charCount(c);
+            if (charCount + units > maxChars) {
+                return false;
+            }
+            charCount += Character.toChars(c, chars, charCount);
+        }
+        return false;
+    }
+
+    private int parseEscape() {
+        if (pos >= end) {
+            return -1;
+        }
+        return switch (buffer[pos++]) {
+            case '"' -> '"';
+            case '\\' -> '\\';
+            case '/' -> '/';
+            case 'b' -> '\b';
+            case 'f' -> '\f';
+            case 'n' -> '\n';
+            case 'r' -> '\r';
+            case 't' -> '\t';
+            case 'u' -> parseUnicodeEscape();
+            default -> -1;
+        };
+    }
+
+    private int parseUnicodeEscape() {
+        int high = parseHex4();
+        if (high < 0 || Character.isLowSurrogate((char) high)) {
+            // Substituto baixo isolado não é texto válido e viraria UTF-8 inválido no COPY
+            return -1;
+        }
+        if (!Character.isHighSurrogate((char) high)) {
+            return high;
+        }
+        // Par substituto escrito como dois escapes \\uXXXX
+        if (end - pos < 6 || buffer[pos] != '\\' || buffer[pos + 1] != 'u') {
+            return -1;
+        }
+        pos += 2;
+        int low = parseHex4();
+        if (low < 0 || !Character.isLowSurrogate((char) low)) {
+            return -1;
+        }
+        return Character.toCodePoint((char) high, (char) low);
+    }
+
+    private int parseHex4() {
+        if (end - pos < 4) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(buffer[pos++], 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Decodifica um code point UTF-8 de múltiplos bytes
+     * @param first primeiro byte (já consumido)
+     * @return code point ou -1 se a sequência for inválida
+     */
+    private int parseUtf8(int first) {
+        int extra;
+        int codePoint;
+        if ((first & 0xE0) == 0xC0) {
+            extra = 1;
+            codePoint = first & 0x1F;
+        } else if ((first & 0xF0) == 0xE0) {
+            extra = 2;
+            codePoint = first & 0x0F;
+        } else if ((first & 0xF8) == 0xF0) {
+            extra = 3;
+            codePoint = first & 0x07;
+        } else {
+            return -1;
+        }
+        if (end - pos < extra) {
+            return -1;
+        }
+        for (int i = 0; i < extra; i++) {
+            int b = buffer[pos++] & 0xFF;
+            if ((b & 0xC0) != 0x80) {
+                return -1;
+            }
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        // Substitutos (U+D800..U+DFFF) codificados em UTF-8 também não são texto válido
+        if (codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            return -1;
+        }
+        return codePoint;
+    }
+
+    /**
+     * Avança até o fim de uma string (aspas de abertura já consumidas)
+     * @return posição das aspas de fechamento ou -1
+     */
+    private int skipStringBody() {
+        while (pos < end) {
+            byte b = buffer[pos++];
+            if (b == '"') {
+                return pos - 1;
+            }
+            if (b == '\\') {
+                pos++;
+            } else if ((b & 0xFF) < 0x20) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Ignora o valor de um campo desconhecido
+     */
+    private boolean skipValue(int depth) {
+        if (pos >= end || depth > MAX_DEPTH) {
+            return false;
+        }
+        byte b = buffer[pos];
+        switch (b) {
+            case '"' -> {
+                pos++;
+                return skipStringBody() >= 0;
+            }
+            case '{', '[' -> {
+                char close = b == '{' ? '}' : ']';
+                pos++;
+                skipWhitespace();
+                if (consume(close)) {
+                    return true;
+                }
+                do {
+                    skipWhitespace();
+                    if (b == '{') {
+                        if (!consume('"') || skipStringBody() < 0) {
+                            return false;
+                        }
+                        skipWhitespace();
+                        if (!consume(':')) {
+                            return false;
+                        }
+                        skipWhitespace();
+                    }
+                    if (!skipValue(depth + 1)) {
+                        return false;
+                    }
+                    skipWhitespace();
+                } while (consume(','));
+                return consume(close);
+            }
+            default -> {
+                // Número ou literal (true, false, null)
+                int start = pos;
+                while (pos < end && isScalarChar(buffer[pos])) {
+                    pos++;
+                }
+                return pos > start;
+            }
+        }
+    }
+
+    private static boolean isScalarChar(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'z') || b == '-' || b == '+' || b == '.' || b == 'E';
+    }
+
+    private boolean keyEquals(int from, int to, byte[] key) {
+        if (to - from != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer[from + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean consume(char expected) {
+        if (pos < end && buffer[pos] == expected) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte b = buffer[pos];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    public int getValor() {
+        return valor;
+    }
+
+    public String getTipo() {
+        return tipo;
+    }
+
+    public String getDescricao() {
+        return descricao;
+    }
+}
@@ -3,8 +3,9 @@ package br.com.rinha.util;
 import br.com.rinha.config.DatabaseConfig;
 import br.com.rinha.repository.ClienteRepository;
 import br.com.rinha.repository.TransacaoRepository;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import br.com.rinha.repository.TransacoesRecentes;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -101,8 +102,8 @@ public class WarmupUtil {
                 // Busca cliente para aquecer queries de saldo/limite
                 clienteRepository.findById(i);
 
-                // Busca transações para aquecer extrato
-                transacaoRepository.getLatestTransactions(i);
+                // Carrega as últimas transações em memória e aquece a consulta do extrato
+                TransacoesRecentes.obter(i, transacaoRepository);
 
                 // Simula execução de operações de validação (sem modificar dados)
                 try (Connection conn = DatabaseConfig.getConnection()) {
@@ -139,21 +140,11 @@ public class WarmupUtil {
             String jsonStr = "{\"valor\": " + i + ", \"tipo\": \"" +
                     (i % 2 == 0 ? "c" : "d") +
                     "\", \"descricao\": \"warmup\"}";
-            try {
-                JsonUtil.getObjectMapper().readTree(jsonStr);
-            } catch (Exception e) {
-                // Ignora erros durante o warmup
-            }
+            byte[] jsonBytes = jsonStr.getBytes(StandardCharsets.UTF_8);
+            new TransacaoParser().parse(jsonBytes, 0, jsonBytes.length);
 
-            // Cria objetos JSON de resposta
-            ObjectNode node = JsonUtil.getObjectMapper().createObjectNode();
-            node.put("limite", 100000);
-            node.put("saldo", i);
-            try {
-                JsonUtil.getObjectMapper().writeValueAsString(node);
-            } catch (Exception e) {
-                // Ignora erros durante o warmup
-            }
+            // Cria JSON de resposta
+            JsonUtil.createTransactionResponse(100000, i);
         }
 
         System.out.println("JIT compilador aquecido");
@@ -0,0 +1,128 @@
+package br.com.rinha.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WTinyLfuCacheTest {
+
+    @Test
+    void gravaELeValores() {
+        WTinyLfuCache<Integer, String> cache = new WTinyLfuCache<>("teste", 10, 0);
+        cache.put(1, "um");
+        cache.put(2, "dois");
+
+        assertEquals("um", cache.get(1));
+        assertEquals("dois", cache.get(2));
+        assertNull(cache.get(3));
+        assertTrue(cache.contains(1));
+        assertFalse(cache.contains(3));
+    }
+
+    @Test
+    void regravarSubstituiSemCrescer() {
+        WTinyLfuCache<Integer, String> cache = new WTinyLfuCache<>("teste", 10, 0);
+        cache.put(1, "um");
+        cache.put(1, "outro");
+
+        assertEquals("outro", cache.get(1));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void removeELimpa() {
+        WTinyLfuCache<Integer, String> cache = new WTinyLfuCache<>("teste", 10, 0);
+        cache.put(1, "um");
+        cache.put(2, "dois");
+
+        cache.remove(1);
+        assertNull(cache.get(1));
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertNull(cache.get(2));
+        assertEquals(0, cache.size());
+
+        // Depois de limpa a cache continua utilizável
+        cache.put(3, "três");
+        assertEquals("três", cache.get(3));
+    }
+
+    @Test
+    void respeitaTamanhoMaximo() {
+        WTinyLfuCache<Integer, Integer> cache = new WTinyLfuCache<>("teste", 100, 0);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i, i);
+            assertTrue(cache.size() <= 100, "tamanho " + cache.size() + " acima do máximo");
+        }
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    void varreduraNaoExpulsaChavesFrequentes() {
+        WTinyLfuCache<Integer, Integer> cache = new WTinyLfuCache<>("teste", 100, 0);
+        for (int key = 0; key < 50; key++) {
+            cache.put(key, key);
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int key = 0; key < 50; key++) {
+                cache.get(key);
+            }
+        }
+
+        // Rajada de chaves vistas uma única vez (como IDs aleatórios inexistentes), enquanto as
+        // frequentes continuam sendo acessadas; sem acessos o envelhecimento do sketch as esqueceria
+        for (int key = 1_000; key < 21_000; key++) {
+            cache.put(key, key);
+            if (key % 200 == 0) {
+                for (int hot = 0; hot < 50; hot++) {
+                    cache.get(hot);
+                }
+            }
+        }
+
+        for (int key = 0; key < 50; key++) {
+            assertEquals(Integer.valueOf(key), cache.get(key), "chave frequente " + key + " foi expulsa");
+        }
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    void chaveNovaFrequenteEntraNaAreaPrincipal() {
+        WTinyLfuCache<Integer, Integer> cache = new WTinyLfuCache<>("teste", 100, 0);
+        for (int key = 0; key < 100; key++) {
+            cache.put(key, key);
+        }
+
+        // Uma chave que volta repetidamente ganha frequência e acaba admitida, mesmo com a cache cheia
+        int hot = 5_000;
+        for (int i = 0; i < 20; i++) {
+            if (cache.get(hot) == null) {
+                cache.put(hot, hot);
+            }
+            cache.put(10_000 + i, i);
+        }
+        assertEquals(Integer.valueOf(hot), cache.get(hot));
+    }
+
+    @Test
+    void expiraDepoisDaValidade() {
+        WTinyLfuCache<Integer, String> cache = new WTinyLfuCache<>("teste", 10, 50);
+        cache.put(1, "um");
+        assertEquals("um", cache.get(1));
+
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(120));
+        assertNull(cache.get(1));
+        assertEquals(0, cache.size());
+
+        // Regravar renova a validade
+        cache.put(1, "de novo");
+        assertEquals("de novo", cache.get(1));
+    }
+}
@@ -0,0 +1,90 @@
+package br.com.rinha.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RouterTest {
+
+    private static Router router() {
+        // Mesmas rotas registradas pela aplicação
+        Router router = new Router();
+        router.register(Route.TRANSACOES, "POST", "/clientes/{id}/transacoes");
+        router.register(Route.EXTRATO, "GET", "/clientes/{id}/extrato");
+        router.register(Route.HEALTH, null, "/health");
+        router.register(Route.METRICS, "GET", "/metrics");
+        return router;
+    }
+
+    @Test
+    void resolveRotaComId() {
+        long match = router().match("POST", "/clientes/42/transacoes");
+        assertEquals(Route.TRANSACOES, Router.route(match));
+        assertEquals(42, Router.clientId(match));
+
+        match = router().match("GET", "/clientes/1/extrato");
+        assertEquals(Route.EXTRATO, Router.route(match));
+        assertEquals(1, Router.clientId(match));
+    }
+
+    @Test
+    void resolveRotaSemId() {
+        assertEquals(Route.METRICS, Router.route(router().match("GET", "/metrics")));
+        assertEquals(0, Router.clientId(router().match("GET", "/metrics")));
+    }
+
+    @Test
+    void metodoNuloAceitaQualquerMetodo() {
+        assertEquals(Route.HEALTH, Router.route(router().match("GET", "/health")));
+        assertEquals(Route.HEALTH, Router.route(router().match("HEAD", "/health")));
+    }
+
+    @Test
+    void metodoDiferenteNaoResolve() {
+        assertEquals(Route.NOT_FOUND, Router.route(router().match("GET", "/clientes/1/transacoes")));
+        assertEquals(Route.NOT_FOUND, Router.route(router().match("POST", "/metrics")));
+    }
+
+    @Test
+    void idInvalidoNaoResolve() {
+        Router router = router();
+        assertEquals(Route.NOT_FOUND, Router.route(router.match("GET", "/clientes//extrato")));
+        assertEquals(Route.NOT_FOUND, Router.route(router.match("GET", "/clientes/abc/extrato")));
+        assertEquals(Route.NOT_FOUND, Router.route(router.match("GET", "/clientes/-1/extrato")));
+        assertEquals(Route.NOT_FOUND, Router.route(router.match("GET", "/clientes/1a/extrato")));
+        assertEquals(Route.NOT_FOUND, Router.route(router.match("GET", "/clientes/1")));
+        assertEquals(Route.NOT_FOUND, Router.route(router.match("GET", "/clientes/1/extrato/")));
+    }
+
+    @Test
+    void zerosAEsquerdaSaoIgnorados() {
+        long match = router().match("GET", "/clientes/007/extrato");
+        assertEquals(Route.EXTRATO, Router.route(match));
+        assertEquals(7, Router.clientId(match));
+    }
+
+    @Test
+    void idComNoveDigitosCabeEmInt() {
+        long match = router().match("GET", "/clientes/999999999/extrato");
+        assertEquals(Route.EXTRATO, Router.route(match));
+        assertEquals(999_999_999, Router.clientId(match));
+    }
+
+    @Test
+    void idComMaisDeNoveDigitosNaoResolve() {
+        // 10 dígitos poderiam estourar o int (2147483648); a rota é recusada em vez de devolver um id errado
+        assertEquals(Route.NOT_FOUND, Router.route(router().match("GET", "/clientes/2147483648/extrato")));
+        assertEquals(Route.NOT_FOUND, Router.route(router().match("GET", "/clientes/0000000001/extrato")));
+    }
+
+    @Test
+    void resolveSobreRegioesDoBuffer() {
+        // Como a engine NIO: método e caminho lidos direto da linha de requisição, com query string fora
+        byte[] line = "GET /clientes/12/extrato?x=1 HTTP/1.1".getBytes(StandardCharsets.US_ASCII);
+        long match = router().match(line, 0, 3, 4, 24);
+        assertEquals(Route.EXTRATO, Router.route(match));
+        assertEquals(12, Router.clientId(match));
+    }
+}
@@ -0,0 +1,163 @@
+package br.com.rinha.repository;
+
+import br.com.rinha.model.Cliente;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientStateTableTest {
+
+    private static Cliente cliente(int id) {
+        return new Cliente(id, "cliente " + id, id * 100, -id, 0);
+    }
+
+    private static ClientActor actor(int id) {
+        return new ClientActor(id, 16, transacoes -> new int[transacoes.size()][]);
+    }
+
+    @Test
+    void guardaClientesDensosEEsparsos() {
+        ClientStateTable table = new ClientStateTable(10, 100, 60_000);
+        table.put(cliente(3));
+        table.put(cliente(5_000));
+        table.put(cliente(-7));
+
+        assertEquals(300, table.get(3).getLimite());
+        assertEquals(-5_000, table.get(5_000).getSaldo());
+        assertEquals(-700, table.get(-7).getLimite());
+        assertNull(table.get(4));
+        assertNull(table.get(5_001));
+    }
+
+    @Test
+    void substituiClienteDoMesmoId() {
+        ClientStateTable table = new ClientStateTable(10, 100, 60_000);
+        table.put(cliente(2));
+        table.put(new Cliente(2, "cliente 2", 200, 50, 1));
+        table.put(cliente(500));
+        table.put(new Cliente(500, "cliente 500", 1, 2, 3));
+
+        assertEquals(50, table.get(2).getSaldo());
+        assertEquals(2, table.get(500).getSaldo());
+    }
+
+    @Test
+    void tabelaEsparsaCresceSemPerderEstado() {
+        ClientStateTable table = new ClientStateTable(0, 100, 60_000);
+        ClientActor first = null;
+
+        // Muito além da capacidade inicial (16): a tabela é copiada várias vezes
+        for (int id = 1; id <= 1_000; id++) {
+            table.put(cliente(id));
+            table.recordRequest(id);
+            if (id == 1) {
+                first = table.actor(id, ClientStateTableTest::actor);
+            }
+        }
+        table.recordRequest(1);
+
+        for (int id = 1; id <= 1_000; id++) {
+            assertNotNull(table.get(id), "cliente " + id + " se perdeu ao crescer");
+            assertEquals(id * 100, table.get(id).getLimite());
+            assertEquals(id == 1 ? 2 : 1, table.requestCount(id));
+        }
+        assertSame(first, table.actor(1, ClientStateTableTest::actor));
+        assertNull(table.get(1_001));
+    }
+
+    @Test
+    void marcaClientesInexistentes() {
+        ClientStateTable table = new ClientStateTable(10, 100, 60_000);
+        assertFalse(table.isMissing(1));
+        assertFalse(table.isMissing(1_000));
+
+        table.markMissing(1);
+        table.markMissing(1_000);
+        assertTrue(table.isMissing(1));
+        assertTrue(table.isMissing(1_000));
+
+        // Guardar o cliente desfaz a marca
+        table.put(cliente(1));
+        table.put(cliente(1_000));
+        assertFalse(table.isMissing(1));
+        assertFalse(table.isMissing(1_000));
+    }
+
+    @Test
+    void marcaDeInexistenteExpira() {
+        ClientStateTable table = new ClientStateTable(10, 100, 50);
+        table.markMissing(1);
+        table.markMissing(1_000);
+
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(120));
+        assertFalse(table.isMissing(1));
+        assertFalse(table.isMissing(1_000));
+    }
+
+    @Test
+    void contaRequisicoes() {
+        ClientStateTable table = new ClientStateTable(10, 100, 60_000);
+        table.recordRequest(1);
+        table.recordRequest(1);
+        assertEquals(2, table.requestCount(1));
+
+        // Fora da faixa densa só contam clientes já em cache
+        table.recordRequest(1_000);
+        assertEquals(0, table.requestCount(1_000));
+        table.put(cliente(1_000));
+        table.recordRequest(1_000);
+        assertEquals(1, table.requestCount(1_000));
+    }
+
+    @Test
+    void criaUmAtorPorCliente() {
+        ClientStateTable table = new ClientStateTable(10, 100, 60_000);
+        AtomicInteger created = new AtomicInteger();
+
+        ClientActor dense = table.actor(1, id -> {
+            created.incrementAndGet();
+            return actor(id);
+        });
+        assertSame(dense, table.actor(1, ClientStateTableTest::actor));
+
+        // Cliente esparso ainda fora da tabela não ganha ator
+        assertNull(table.actor(1_000, ClientStateTableTest::actor));
+        table.put(cliente(1_000));
+        ClientActor sparse = table.actor(1_000, id -> {
+            created.incrementAndGet();
+            return actor(id);
+        });
+        assertNotNull(sparse);
+        assertSame(sparse, table.actor(1_000, ClientStateTableTest::actor));
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    void limparDescartaClientesEMantemContadoresEAtores() {
+        ClientStateTable table = new ClientStateTable(10, 100, 60_000);
+        table.put(cliente(1));
+        table.put(cliente(1_000));
+        table.recordRequest(1);
+        table.recordRequest(1_000);
+        ClientActor sparse = table.actor(1_000, ClientStateTableTest::actor);
+
+        table.clear();
+        assertNull(table.get(1));
+        assertNull(table.get(1_000));
+        assertEquals(1, table.requestCount(1));
+        assertEquals(1, table.requestCount(1_000));
+        assertSame(sparse, table.actor(1_000, ClientStateTableTest::actor));
+
+        table.put(cliente(1_000));
+        assertEquals(100_000, table.get(1_000).getLimite());
+    }
+}
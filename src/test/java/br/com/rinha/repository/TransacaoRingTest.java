@@ -0,0 +1,134 @@
+package br.com.rinha.repository;
+
+import br.com.rinha.model.Transacao;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TransacaoRingTest {
+
+    private static final ZonedDateTime INSTANTE = ZonedDateTime.of(2024, 2, 1, 12, 30, 45, 123_456_789, ZoneOffset.UTC);
+
+    private static Transacao transacao(int valor) {
+        return new Transacao(1, valor, valor % 2 == 0 ? "c" : "d", "t" + valor, INSTANTE);
+    }
+
+    @Test
+    void arredondaCapacidadeParaPotenciaDeDois() {
+        assertEquals(2, new TransacaoRing(1).capacity());
+        assertEquals(8, new TransacaoRing(8).capacity());
+        assertEquals(16, new TransacaoRing(9).capacity());
+    }
+
+    @Test
+    void preservaCamposDaTransacao() {
+        TransacaoRing ring = new TransacaoRing(4);
+        ring.offer(new Transacao(7, 150, "d", "çã😀", INSTANTE));
+
+        assertEquals(1, ring.peek(10));
+        Transacao lida = ring.get(0);
+        assertEquals(7, lida.getClienteId());
+        assertEquals(150, lida.getValor());
+        assertEquals("d", lida.getTipo());
+        assertEquals("çã😀", lida.getDescricao());
+        assertEquals(INSTANTE.toInstant(), lida.getRealizadaEm().toInstant());
+        // ç e ã ocupam 2 bytes cada e o emoji 4 em UTF-8
+        assertEquals(8, ring.descricaoLength(0));
+    }
+
+    @Test
+    void loteFalhoERelidoNaMesmaOrdem() {
+        TransacaoRing ring = new TransacaoRing(8);
+        for (int i = 1; i <= 5; i++) {
+            ring.offer(transacao(i));
+        }
+
+        // peek sem commit não consome: a próxima leitura começa nas mesmas posições
+        assertEquals(3, ring.peek(3));
+        assertEquals(1, ring.valor(0));
+        assertEquals(3, ring.peek(3));
+        assertEquals(1, ring.valor(0));
+
+        ring.commit(3);
+        assertEquals(2, ring.depth());
+        assertEquals(2, ring.peek(10));
+        assertEquals(4, ring.valor(0));
+        assertEquals(5, ring.valor(1));
+    }
+
+    @Test
+    void daVoltaNoBufferSemPerderOrdem() {
+        TransacaoRing ring = new TransacaoRing(4);
+        int proximo = 1;
+        int esperado = 1;
+
+        // Várias voltas completas, com lotes que atravessam o fim do array
+        for (int rodada = 0; rodada < 10; rodada++) {
+            while (ring.depth() < ring.capacity()) {
+                ring.offer(transacao(proximo++));
+            }
+            int count = ring.peek(3);
+            assertEquals(3, count);
+            for (int i = 0; i < count; i++) {
+                assertEquals(esperado++, ring.valor(i));
+                assertEquals(esperado - 1, ring.get(i).getValor());
+            }
+            ring.commit(count);
+        }
+
+        int count = ring.peek(10);
+        for (int i = 0; i < count; i++) {
+            assertEquals(esperado++, ring.valor(i));
+        }
+        ring.commit(count);
+        assertEquals(proximo, esperado);
+        assertEquals(0, ring.depth());
+        assertEquals(4, ring.highWatermark());
+    }
+
+    @Test
+    void variosProdutoresUmConsumidor() throws InterruptedException {
+        TransacaoRing ring = new TransacaoRing(64);
+        int produtores = 4;
+        int porProdutor = 5000;
+        // Como no TransacaoBatcher: cada produtor só publica com vaga garantida
+        Semaphore vagas = new Semaphore(ring.capacity());
+        AtomicInteger valor = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < produtores; p++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < porProdutor; i++) {
+                    vagas.acquireUninterruptibly();
+                    ring.offer(transacao(valor.incrementAndGet()));
+                }
+            }));
+        }
+
+        long soma = 0;
+        int consumidas = 0;
+        while (consumidas < produtores * porProdutor) {
+            int count = ring.peek(16);
+            for (int i = 0; i < count; i++) {
+                soma += ring.valor(i);
+            }
+            ring.commit(count);
+            vagas.release(count);
+            consumidas += count;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long total = (long) produtores * porProdutor;
+        assertEquals(total * (total + 1) / 2, soma);
+        assertEquals(0, ring.depth());
+    }
+}
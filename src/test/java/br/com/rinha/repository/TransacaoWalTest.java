@@ -0,0 +1,144 @@
+package br.com.rinha.repository;
+
+import br.com.rinha.model.Transacao;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransacaoWalTest {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+    private static final ZonedDateTime INSTANTE = ZonedDateTime.of(2024, 2, 1, 12, 30, 45, 123_456_789, ZoneOffset.UTC);
+
+    @TempDir
+    Path directory;
+
+    private static Transacao transacao(int valor) {
+        return new Transacao(1, valor, valor % 2 == 0 ? "c" : "d", "t" + valor, INSTANTE);
+    }
+
+    private List<Transacao> reopen(int segmentSize) throws IOException {
+        List<Transacao> recovered = new ArrayList<>();
+        TransacaoWal.open(directory, segmentSize, recovered).close();
+        return recovered;
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".wal")).count();
+        }
+    }
+
+    @Test
+    void recuperaRegistrosNaoConfirmadosEmOrdem() throws IOException {
+        TransacaoWal wal = TransacaoWal.open(directory, SEGMENT_SIZE, new ArrayList<>());
+        for (int i = 1; i <= 5; i++) {
+            wal.append(transacao(i));
+        }
+        wal.commit(2);
+        wal.close();
+
+        List<Transacao> recovered = reopen(SEGMENT_SIZE);
+        assertEquals(3, recovered.size());
+        for (int i = 0; i < 3; i++) {
+            Transacao transacao = recovered.get(i);
+            assertEquals(i + 3, transacao.getValor());
+            assertEquals(1, transacao.getClienteId());
+            assertEquals((i + 3) % 2 == 0 ? "c" : "d", transacao.getTipo());
+            assertEquals("t" + (i + 3), transacao.getDescricao());
+            assertEquals(INSTANTE.toInstant(), transacao.getRealizadaEm().toInstant());
+        }
+    }
+
+    @Test
+    void nadaVoltaDepoisDeTudoConfirmado() throws IOException {
+        TransacaoWal wal = TransacaoWal.open(directory, SEGMENT_SIZE, new ArrayList<>());
+        wal.append(transacao(1));
+        wal.append(transacao(2));
+        wal.commit(2);
+        wal.close();
+
+        assertTrue(reopen(SEGMENT_SIZE).isEmpty());
+    }
+
+    @Test
+    void checkpointContinuaAposRecuperacao() throws IOException {
+        TransacaoWal wal = TransacaoWal.open(directory, SEGMENT_SIZE, new ArrayList<>());
+        wal.append(transacao(1));
+        wal.append(transacao(2));
+        wal.close();
+
+        // Segunda execução: confirma o recuperado, anexa mais um e cai sem confirmá-lo
+        List<Transacao> recovered = new ArrayList<>();
+        wal = TransacaoWal.open(directory, SEGMENT_SIZE, recovered);
+        assertEquals(2, recovered.size());
+        wal.commit(recovered.size());
+        wal.append(transacao(3));
+        wal.close();
+
+        List<Transacao> again = reopen(SEGMENT_SIZE);
+        assertEquals(1, again.size());
+        assertEquals(3, again.get(0).getValor());
+    }
+
+    @Test
+    void apagaSegmentosConfirmadosERecuperaAtravesDeSegmentos() throws IOException {
+        // Segmentos pequenos: poucos registros por arquivo
+        int segmentSize = 256;
+        TransacaoWal wal = TransacaoWal.open(directory, segmentSize, new ArrayList<>());
+        for (int i = 1; i <= 40; i++) {
+            wal.append(transacao(i));
+        }
+        long before = segmentCount();
+        assertTrue(before > 3, "esperava vários segmentos, havia " + before);
+
+        wal.commit(30);
+        assertTrue(segmentCount() < before, "segmentos confirmados deveriam ter sido apagados");
+        wal.close();
+
+        List<Transacao> recovered = reopen(segmentSize);
+        assertEquals(10, recovered.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(31 + i, recovered.get(i).getValor());
+        }
+    }
+
+    @Test
+    void paraNoRegistroIncompleto() throws IOException {
+        TransacaoWal wal = TransacaoWal.open(directory, SEGMENT_SIZE, new ArrayList<>());
+        wal.append(transacao(1));
+        wal.append(transacao(2));
+        wal.append(transacao(3));
+        wal.close();
+
+        // Corrompe o payload do segundo registro, como uma escrita interrompida pela queda do processo
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(path -> path.getFileName().toString().endsWith(".wal")).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            channel.read(header, 0);
+            int second = 8 + header.flip().getInt();
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF, (byte) 0xFF}), second + 8 + 12);
+        }
+
+        List<Transacao> recovered = reopen(SEGMENT_SIZE);
+        assertEquals(1, recovered.size());
+        assertEquals(1, recovered.get(0).getValor());
+    }
+}
@@ -0,0 +1,142 @@
+package br.com.rinha.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransacaoParserTest {
+
+    private final TransacaoParser parser = new TransacaoParser();
+
+    private boolean parse(String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return parser.parse(bytes, 0, bytes.length);
+    }
+
+    @Test
+    void aceitaTransacaoValida() {
+        assertTrue(parse("{\"valor\": 1000, \"tipo\": \"c\", \"descricao\": \"descricao\"}"));
+        assertEquals(1000, parser.getValor());
+        assertEquals("c", parser.getTipo());
+        assertEquals("descricao", parser.getDescricao());
+    }
+
+    @Test
+    void aceitaCamposEmQualquerOrdemEIgnoraDesconhecidos() {
+        assertTrue(parse(" {\"extra\": {\"a\": [1, 2, null]}, \"descricao\":\"x\",\"tipo\":\"d\",\"valor\":1} "));
+        assertEquals(1, parser.getValor());
+        assertEquals("d", parser.getTipo());
+        assertEquals("x", parser.getDescricao());
+    }
+
+    @Test
+    void aceitaCorpoEmRegiaoDoBuffer() {
+        byte[] bytes = "lixo{\"valor\":5,\"tipo\":\"c\",\"descricao\":\"ab\"}lixo".getBytes(StandardCharsets.UTF_8);
+        assertTrue(parser.parse(bytes, 4, bytes.length - 8));
+        assertEquals(5, parser.getValor());
+    }
+
+    @Test
+    void recusaValorInvalido() {
+        assertFalse(parse("{\"valor\": 1.5, \"tipo\": \"c\", \"descricao\": \"x\"}"));
+        assertFalse(parse("{\"valor\": 1e3, \"tipo\": \"c\", \"descricao\": \"x\"}"));
+        assertFalse(parse("{\"valor\": 0, \"tipo\": \"c\", \"descricao\": \"x\"}"));
+        assertFalse(parse("{\"valor\": -1, \"tipo\": \"c\", \"descricao\": \"x\"}"));
+        assertFalse(parse("{\"valor\": 01, \"tipo\": \"c\", \"descricao\": \"x\"}"));
+        assertFalse(parse("{\"valor\": \"1\", \"tipo\": \"c\", \"descricao\": \"x\"}"));
+        assertFalse(parse("{\"valor\": null, \"tipo\": \"c\", \"descricao\": \"x\"}"));
+        assertFalse(parse("{\"valor\": 2147483648, \"tipo\": \"c\", \"descricao\": \"x\"}"));
+        assertTrue(parse("{\"valor\": 2147483647, \"tipo\": \"c\", \"descricao\": \"x\"}"));
+    }
+
+    @Test
+    void recusaTipoInvalido() {
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"x\", \"descricao\": \"x\"}"));
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"cd\", \"descricao\": \"x\"}"));
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"\", \"descricao\": \"x\"}"));
+        assertFalse(parse("{\"valor\": 1, \"tipo\": null, \"descricao\": \"x\"}"));
+    }
+
+    @Test
+    void recusaCamposAusentes() {
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"c\"}"));
+        assertFalse(parse("{\"tipo\": \"c\", \"descricao\": \"x\"}"));
+        assertFalse(parse("{}"));
+    }
+
+    @Test
+    void recusaJsonMalFormado() {
+        assertFalse(parse(""));
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"x\""));
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"x\"} {}"));
+        assertFalse(parse("{\"valor\": 1 \"tipo\": \"c\", \"descricao\": \"x\"}"));
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"x\nx\"}"));
+    }
+
+    @Test
+    void limitaDescricaoADezCaracteres() {
+        assertTrue(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"0123456789\"}"));
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"01234567890\"}"));
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"\"}"));
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": null}"));
+    }
+
+    @Test
+    void contaDescricaoEmUnidadesUtf16() {
+        // Acentos ocupam um caractere; um emoji (par substituto) ocupa dois, como em String.length()
+        assertTrue(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"çãéíóúâêôà\"}"));
+        assertEquals("çãéíóúâêôà", parser.getDescricao());
+        assertTrue(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"12345678\uD83D\uDE00\"}"));
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"123456789\uD83D\uDE00\"}"));
+    }
+
+    @Test
+    void decodificaEscapes() {
+        assertTrue(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"a\\\"b\\\\c\\/d\\n\"}"));
+        assertEquals("a\"b\\c/d\n", parser.getDescricao());
+        assertTrue(parse("{\"valor\": 1, \"tipo\": \"\\u0063\", \"descricao\": \"\\u00e7\"}"));
+        assertEquals("c", parser.getTipo());
+        assertEquals("ç", parser.getDescricao());
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"\\x\"}"));
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"\\u00g1\"}"));
+    }
+
+    @Test
+    void aceitaParSubstitutoEmEscapes() {
+        assertTrue(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"\\uD83D\\uDE00\"}"));
+        assertEquals("\uD83D\uDE00", parser.getDescricao());
+    }
+
+    @Test
+    void recusaSubstitutosIsolados() {
+        // Substituto alto sem o baixo, baixo isolado e baixo antes do alto
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"\\uD83D\"}"));
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"\\uD83Dx\"}"));
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"\\uDC00\"}"));
+        assertFalse(parse("{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"\\uDE00\\uD83D\"}"));
+    }
+
+    @Test
+    void recusaUtf8Invalido() {
+        byte[] prefix = "{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"".getBytes(StandardCharsets.UTF_8);
+        byte[] suffix = "\"}".getBytes(StandardCharsets.UTF_8);
+
+        // Byte de continuação solto, sequência truncada e substituto U+D800 codificado em UTF-8
+        assertFalse(parseBytes(prefix, new byte[] {(byte) 0x80}, suffix));
+        assertFalse(parseBytes(prefix, new byte[] {(byte) 0xC3}, suffix));
+        assertFalse(parseBytes(prefix, new byte[] {(byte) 0xED, (byte) 0xA0, (byte) 0x80}, suffix));
+        assertTrue(parseBytes(prefix, new byte[] {(byte) 0xC3, (byte) 0xA7}, suffix));
+    }
+
+    private boolean parseBytes(byte[] prefix, byte[] middle, byte[] suffix) {
+        byte[] body = new byte[prefix.length + middle.length + suffix.length];
+        System.arraycopy(prefix, 0, body, 0, prefix.length);
+        System.arraycopy(middle, 0, body, prefix.length, middle.length);
+        System.arraycopy(suffix, 0, body, prefix.length + middle.length, suffix.length);
+        return parser.parse(body, 0, body.length);
+    }
+}